@@ -4,10 +4,12 @@ import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @EnableAspectJAutoProxy(exposeProxy = true)//暴露Spring代理对象
 @MapperScan("com.hmdp.mapper")
+@EnableScheduling//开启定时任务
 @SpringBootApplication
 public class HmDianPingApplication {
 
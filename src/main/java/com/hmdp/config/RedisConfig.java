@@ -0,0 +1,83 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.MixedCacheCodec;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SoldOutRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_CATALOG_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_NAME_CHANNEL;
+
+/**
+ * Redis配置类
+ */
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 值为字节数组的RedisTemplate，用于读写编码后的缓存数据
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> byteRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * 缓存编解码器，hmdp.cache.codec 为 binary 时写入二进制格式，为 json 时写入JSON格式，读取时两种格式都支持
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:binary}") String codec) {
+        return new MixedCacheCodec(!"json".equalsIgnoreCase(codec));
+    }
+
+    /**
+     * Redis发布订阅监听容器，用于接收其他节点广播的消息
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory connectionFactory, LocalCache localCache, IdBloomFilter idBloomFilter,
+            SoldOutRegistry soldOutRegistry, SeckillStockShards seckillStockShards, ShopGeoIndex shopGeoIndex,
+            ShopNameIndex shopNameIndex, ShopCatalog shopCatalog) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //订阅本地缓存失效频道
+        container.addMessageListener(localCache, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //订阅布隆过滤器新增id频道
+        container.addMessageListener(idBloomFilter, new ChannelTopic(BLOOM_ADD_CHANNEL));
+        //订阅秒杀券售罄频道
+        container.addMessageListener(soldOutRegistry, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        //订阅秒杀券分片数量变更频道
+        container.addMessageListener(seckillStockShards, new ChannelTopic(SECKILL_SHARDS_CHANNEL));
+        //订阅店铺坐标变更频道
+        container.addMessageListener(shopGeoIndex, new ChannelTopic(SHOP_GEO_CHANNEL));
+        //订阅店铺名称变更频道
+        container.addMessageListener(shopNameIndex, new ChannelTopic(SHOP_NAME_CHANNEL));
+        //订阅店铺变更频道
+        container.addMessageListener(shopCatalog, new ChannelTopic(SHOP_CATALOG_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRefresher;
+import com.hmdp.utils.ShopCacheWarmer;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SingleFlight;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存运维诊断
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private SingleFlight singleFlight;
+    @Resource
+    private CacheRefresher cacheRefresher;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopNameIndex shopNameIndex;
+    @Resource
+    private ShopCatalog shopCatalog;
+
+    /**
+     * 查询各缓存前缀的命中率、延迟分位数以及合并加载、后台刷新的统计
+     */
+    @GetMapping("/metrics")
+    public Result queryMetrics() {
+        Map<String, Object> loader = new LinkedHashMap<>();
+        loader.put("load", singleFlight.getLoadCount());
+        loader.put("coalesced", singleFlight.getCoalescedCount());
+        loader.put("inFlight", singleFlight.getInFlightCount());
+
+        Map<String, Object> refresher = new LinkedHashMap<>();
+        refresher.put("hit", cacheRefresher.getHitCount());
+        refresher.put("stale", cacheRefresher.getStaleCount());
+        refresher.put("refresh", cacheRefresher.getRefreshCount());
+        refresher.put("failure", cacheRefresher.getFailureCount());
+        refresher.put("rejected", cacheRefresher.getRejectedCount());
+        refresher.put("queueSize", cacheRefresher.getQueueSize());
+        refresher.put("trackedKeys", cacheRefresher.getTrackedKeyCount());
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("namespaces", cacheMetrics.snapshot());
+        metrics.put("singleFlight", loader);
+        metrics.put("refresher", refresher);
+        Map<String, Object> geoIndex = new LinkedHashMap<>();
+        geoIndex.put("ready", shopGeoIndex.isReady());
+        geoIndex.put("size", shopGeoIndex.size());
+        metrics.put("geoIndex", geoIndex);
+        Map<String, Object> nameIndex = new LinkedHashMap<>();
+        nameIndex.put("ready", shopNameIndex.isReady());
+        nameIndex.put("size", shopNameIndex.size());
+        metrics.put("nameIndex", nameIndex);
+        Map<String, Object> catalog = new LinkedHashMap<>();
+        catalog.put("ready", shopCatalog.isReady());
+        catalog.put("size", shopCatalog.size());
+        metrics.put("catalog", catalog);
+        return Result.ok(metrics);
+    }
+
+    /**
+     * 手动触发店铺缓存预热
+     */
+    @PostMapping("/warm-up")
+    public Result warmUp() {
+        if (!shopCacheWarmer.start()) {
+            return Result.fail("缓存预热正在进行中");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 查询店铺缓存预热进度
+     */
+    @GetMapping("/warm-up")
+    public Result queryWarmUpStatus() {
+        return Result.ok(shopCacheWarmer.getStatus());
+    }
+
+    /**
+     * 查询key前缀下缓存的过期时间分布
+     *
+     * @param prefix        缓存key前缀，例如 cache:shop:
+     * @param bucketSeconds 每个时间段的长度（秒）
+     * @param buckets       时间段数量
+     * @return 每个时间段内将要过期的key数量
+     */
+    @GetMapping("/expiry")
+    public Result queryExpiryHistogram(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "bucketSeconds", defaultValue = "60") Long bucketSeconds,
+            @RequestParam(value = "buckets", defaultValue = "60") Integer buckets) {
+        if (bucketSeconds <= 0 || buckets <= 0 || buckets > 1440) {
+            return Result.fail("统计参数错误");
+        }
+        return Result.ok(cacheClient.expiryHistogram(prefix, bucketSeconds, buckets));
+    }
+}
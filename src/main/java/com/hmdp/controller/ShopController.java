@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -75,17 +73,42 @@ public class ShopController {
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
-            @RequestParam(value = "x", required = false) Long x,
-            @RequestParam(value = "y", required = false) Long y
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "sortBy", required = false) String sortBy
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
-        //根据商铺地址分页查询，使用Redis对GEO的支持
-//        return shopService.queryShopByType(typeId, current, x, y);
+        //传入坐标时根据商铺地址分页查询，使用Redis对GEO的支持，否则根据类型按排序分页查询
+        return shopService.queryShopByType(typeId, current, x, y, sortBy);
+    }
+
+    /**
+     * 根据类型按距离滚动查询附近商铺，每一页从上一页最后一个商铺的距离继续查询
+     *
+     * @param typeId       商铺类型
+     * @param lastDistance 上一页最后一个商铺的距离，第一页不传
+     * @param lastId       上一页最后一个商铺的id
+     * @return 商铺列表和下一页游标
+     */
+    @GetMapping("/of/type/nearby")
+    public Result queryShopNearby(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "lastDistance", required = false) Double lastDistance,
+            @RequestParam(value = "lastId", required = false) Long lastId
+    ) {
+        return shopService.queryShopNearby(typeId, x, y, lastDistance, lastId);
+    }
+
+    /**
+     * 按类型、商圈、人均价格、评分、营业时间和距离筛选商铺，排序后分页
+     *
+     * @param filter 筛选条件，例如 typeId=1&x=120.1&y=30.2&maxDistance=3000&maxPrice=100&openNow=true&sortBy=score
+     * @return 商铺列表和符合条件的总数
+     */
+    @GetMapping("/filter")
+    public Result filterShops(ShopFilter filter) {
+        return shopService.filterShops(filter);
     }
 
     /**
@@ -99,11 +122,21 @@ public class ShopController {
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        //名称索引可用时使用索引查询，按相关度排序，否则使用数据库模糊查询
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 根据输入的商铺名称前缀联想商铺名称
+     *
+     * @param prefix 输入的名称前缀
+     * @param limit  返回数量
+     * @return 商铺id和名称列表
+     */
+    @GetMapping("/suggest")
+    public Result suggestShopName(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        return shopService.suggestShopName(prefix, limit);
     }
 }
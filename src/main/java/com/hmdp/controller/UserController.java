@@ -9,6 +9,7 @@ import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -33,6 +34,8 @@ public class UserController {
     private IUserService userService;
     @Resource
     private IUserInfoService userInfoService;
+    @Resource
+    private IdBloomFilter idBloomFilter;
 
     /**
      * 发送手机验证码
@@ -96,6 +99,10 @@ public class UserController {
 
     @GetMapping("/{id}")
     public Result queryUserById(@PathVariable("id") Long userid) {
+        //布隆过滤器判断用户一定不存在
+        if (!idBloomFilter.mightContain(IdBloomFilter.USER, userid)) {
+            return Result.fail("该用户不存在");
+        }
         User user = userService.getById(userid);
         if (user == null) {
             return Result.fail("该用户不存在");
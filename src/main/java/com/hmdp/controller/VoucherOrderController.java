@@ -3,12 +3,18 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.SeckillOrderConsumer;
+import com.hmdp.utils.SeckillRateLimiter;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * <p>
@@ -23,15 +29,43 @@ import javax.annotation.Resource;
 public class VoucherOrderController {
     @Resource
     IVoucherOrderService voucherOrderService;
+    @Resource
+    SeckillRateLimiter seckillRateLimiter;
+    @Resource
+    SeckillOrderConsumer seckillOrderConsumer;
 
     /**
      * 优惠券秒杀！
      *
-     * @param voucherId 优惠券Id
+     * @param voucherId    优惠券Id
+     * @param requestToken 客户端生成的请求令牌，重复提交时返回第一次的结果
      * @return voucherOrderId 优惠券订单Id
      */
     @PostMapping("seckill/{id}")
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = "X-Request-Token", required = false) String requestToken) {
+        return voucherOrderService.seckillVoucher(voucherId, requestToken);
+    }
+
+    /**
+     * 查询秒杀订单处理结果
+     *
+     * @param orderId 秒杀返回的订单Id
+     * @return 订单状态 QUEUED/SUCCESS/FAILED
+     */
+    @GetMapping("result/{orderId}")
+    public Result queryOrderResult(@PathVariable("orderId") Long orderId) {
+        return voucherOrderService.queryOrderResult(orderId);
+    }
+
+    /**
+     * 查询秒杀下单的限流统计，以及订单消费者的处理统计和各处理通道的队列长度
+     */
+    @GetMapping("metrics")
+    public Result queryMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("limit", seckillRateLimiter.snapshot());
+        metrics.put("consumer", seckillOrderConsumer.snapshot());
+        return Result.ok(metrics);
     }
 }
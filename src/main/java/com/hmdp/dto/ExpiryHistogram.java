@@ -0,0 +1,33 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 缓存过期时间分布
+ */
+@Data
+public class ExpiryHistogram {
+    private String keyPrefix;
+    /**
+     * 每个时间段的长度（秒）
+     */
+    private Long bucketSeconds;
+    /**
+     * 从当前时间开始，每个时间段内将要过期的key数量
+     */
+    private List<Long> buckets;
+    /**
+     * 超出统计范围才过期的key数量
+     */
+    private Long beyond;
+    /**
+     * 没有设置过期时间的key数量
+     */
+    private Long persistent;
+    /**
+     * 扫描的key总数
+     */
+    private Long scanned;
+}
@@ -0,0 +1,20 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 附近店铺按距离游标分页封装类，下一页请求携带 lastDistance 和 lastId
+ */
+@Data
+public class NearbyResult {
+    private List<?> list;
+    private Double lastDistance;
+    private Long lastId;
+    /**
+     * 本次查询使用的半径（米）
+     */
+    private Double radius;
+    private Boolean hasMore;
+}
@@ -0,0 +1,26 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 秒杀订单处理结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderResult {
+    /**
+     * 订单id
+     */
+    private Long orderId;
+    /**
+     * QUEUED：排队中；SUCCESS：下单成功；FAILED：下单失败
+     */
+    private String status;
+    /**
+     * 失败原因
+     */
+    private String message;
+}
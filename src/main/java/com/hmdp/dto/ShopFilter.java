@@ -0,0 +1,33 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 店铺多条件筛选参数，没有传入的条件不参与筛选
+ */
+@Data
+public class ShopFilter {
+    private Long typeId;
+    /**
+     * 商圈
+     */
+    private String area;
+    private Long minPrice;
+    private Long maxPrice;
+    private Integer minScore;
+    /**
+     * 只返回当前营业中的店铺
+     */
+    private Boolean openNow;
+    private Double x;
+    private Double y;
+    /**
+     * 最大距离（米），需要传入坐标
+     */
+    private Double maxDistance;
+    /**
+     * 排序 score/sold/avgPrice/distance，默认传入坐标时按距离，否则按评分
+     */
+    private String sortBy;
+    private Integer current = 1;
+}
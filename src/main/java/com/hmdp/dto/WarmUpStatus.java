@@ -0,0 +1,32 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存预热进度
+ */
+@Data
+public class WarmUpStatus {
+    private Boolean running;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    /**
+     * 已处理的店铺数量
+     */
+    private Long processed;
+    /**
+     * 店铺总数（开始时统计）
+     */
+    private Long total;
+    /**
+     * 已处理的最大店铺id
+     */
+    private Long lastId;
+    /**
+     * 每秒处理的店铺数量
+     */
+    private Double rowsPerSecond;
+    private String error;
+}
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmdp.entity.VoucherOrder;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.hmdp.entity.VoucherOrder;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 批量写入订单，已存在的订单（id 或 user_id, voucher_id 唯一）不修改
+     * 重复行的影响行数取决于驱动的 useAffectedRows 设置，调用方不能据此判断实际写入的行数
+     */
+    void insertBatchSkipDuplicate(@Param("orders") List<VoucherOrder> orders);
+
 }
@@ -2,6 +2,7 @@ package com.hmdp.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
 
 /**
@@ -18,5 +19,13 @@ public interface IShopService extends IService<Shop> {
 
     Result update(Shop shop);
 
-    Result queryShopByType(Integer typeId, Integer current, Long x, Long y);
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sortBy);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggestShopName(String prefix, Integer limit);
+
+    Result filterShops(ShopFilter filter);
+
+    Result queryShopNearby(Integer typeId, Double x, Double y, Double lastDistance, Long lastId);
 }
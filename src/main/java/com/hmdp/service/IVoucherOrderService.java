@@ -4,6 +4,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * <p>
  * 服务类
@@ -14,7 +17,13 @@ import com.hmdp.entity.VoucherOrder;
  */
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
-    Result seckillVoucher(Long voucherId);
+    Result seckillVoucher(Long voucherId, String requestToken);
+
+    Result queryOrderResult(Long orderId);
+
+    List<VoucherOrder> handleVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
 
-    void createVoucherOrder(VoucherOrder voucherOrder);
+    Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -16,5 +16,11 @@ public interface IVoucherService extends IService<Voucher> {
 
     Result queryVoucherOfShop(Long shopId);
 
+    void cacheVoucherOfShop(Long shopId);
+
+    void evictVoucherOfShop(Long shopId);
+
     void addSeckillVoucher(Voucher voucher);
+
+    Result addSeckillStock(Long voucherId, Integer count);
 }
@@ -14,21 +14,24 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheTtlPolicy;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -46,6 +49,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IFollowService followService;
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    IdBloomFilter idBloomFilter;
+    @Resource
+    CacheClient cacheClient;
+
+    @PostConstruct
+    private void init() {
+        cacheClient.registerTtlPolicy(CACHE_USER_KEY,
+                CacheTtlPolicy.of(CACHE_USER_TTL, TimeUnit.MINUTES, CACHE_USER_TTL_JITTER));
+    }
 
     /**
      * 分页
@@ -58,13 +71,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         Page<Blog> page = this.query().orderByDesc("liked").page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            //查询博客相关用户
-            this.queryBlogUser(blog);
-            //查询博客是否被点赞
-            this.isBlogLiked(blog);
-        });
+        //批量查询博客相关用户
+        this.queryBlogUsers(records);
+        //批量查询博客是否被点赞
+        this.isBlogsLiked(records);
         return Result.ok(records);
     }
 
@@ -75,7 +85,14 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Long id) {
+        //布隆过滤器判断博客一定不存在
+        if (!idBloomFilter.mightContain(IdBloomFilter.BLOG, id)) {
+            return Result.fail("博客不存在");
+        }
         Blog blog = getById(id);
+        if (blog == null) {
+            return Result.fail("博客不存在");
+        }
         //查询blog相关用户
         queryBlogUser(blog);
         //查询当前博客是否被点赞
@@ -128,11 +145,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             return Result.ok(Collections.emptyList());
         }
         List<Long> idList = stringSet.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idstr = StrUtil.join(",", idList);
-        List<UserDTO> userDTOS = userService.query().in("id", idList).last("ORDER BY FIELD(id," + idstr + ")").list().
-                stream().
-                map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        //按点赞顺序返回，查询用户缓存，未命中的用户一次查询数据库
+        List<UserDTO> userDTOS = new ArrayList<>(queryUsers(idList).values());
         return Result.ok(userDTOS);
     }
 
@@ -147,6 +161,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!result) {
             return Result.fail("新增失败");
         }
+        idBloomFilter.add(IdBloomFilter.BLOG, blog.getId());
         //查询笔记作者的粉丝列表
         List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
         //将当前时间戳作为存入ZSet的score,从而实现排序
@@ -202,13 +217,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         //3.根据id查博客信息
         String idstr = StrUtil.join(",", idList);
         List<Blog> blogs = query().in("id", idList).last("ORDER BY FIELD(id," + idstr + ")").list();
-        //循环遍历 添加blog信息
-        for (Blog blog : blogs) {
-            //查询blog相关用户
-            queryBlogUser(blog);
-            //查询当前博客是否被点赞
-            isBlogLiked(blog);
-        }
+        //批量查询blog相关用户
+        queryBlogUsers(blogs);
+        //批量查询博客是否被点赞
+        isBlogsLiked(blogs);
         ScrollResult result = new ScrollResult();
         result.setList(blogs);
         result.setOffset(os);
@@ -235,13 +247,67 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     /**
-     * 查询博客相关用户
+     * 使用管道一次查询多个博客是否被当前用户点赞
+     */
+    private void isBlogsLiked(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        if (BeanUtil.isEmpty(user) || blogs.isEmpty()) {
+            return; // 用户未登录
+        }
+        byte[] member = user.getId().toString().getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                connection.zSetCommands().zScore((BLOG_LIKED_KEY + blog.getId()).getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    /**
+     * 批量查询博客相关用户，一次访问Redis，未命中的用户一次查询数据库
+     */
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+        Map<Long, UserDTO> users = queryUsers(userIds);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    /**
+     * 批量查询用户缓存，按传入的顺序返回；未命中的用户一次查询数据库，其他线程正在查询的用户等待其结果
+     */
+    private Map<Long, UserDTO> queryUsers(List<Long> userIds) {
+        return cacheClient.queryBatch(CACHE_USER_KEY, userIds, UserDTO.class,
+                ids -> userService.listByIds(ids).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 查询博客相关用户，与批量查询使用同一份用户缓存，未命中时同一节点并发查询同一用户只查询一次数据库
      */
     private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+        UserDTO user = cacheClient.queryWithPassThrough(CACHE_USER_KEY, blog.getUserId(), UserDTO.class,
+                id -> {
+                    User entity = userService.getById(id);
+                    return entity == null ? null : BeanUtil.copyProperties(entity, UserDTO.class);
+                },
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+        if (user != null) {
+            blog.setName(user.getNickName());
+            blog.setIcon(user.getIcon());
+        }
     }
 
 }
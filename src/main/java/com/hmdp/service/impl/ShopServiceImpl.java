@@ -1,39 +1,62 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.NearbyResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.dto.ShopSuggestion;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheConsistency;
+import com.hmdp.utils.CacheTtlPolicy;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopListingCache;
+import com.hmdp.utils.ShopNameIndex;
 import com.sun.xml.internal.ws.policy.privateutil.PolicyUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.MAX_PAGE_SIZE;
 
 /**
  * <p>
@@ -45,15 +68,47 @@ import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
  */
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
+    @Value("${hmdp.nearby.initial-radius:1000}")
+    private double nearbyInitialRadius;
+    @Value("${hmdp.nearby.max-radius:20000}")
+    private double nearbyMaxRadius;
+
     @Resource
     StringRedisTemplate stringRedisTemplate;
     @Resource
     IShopService shopService;
     @Resource
     CacheClient cacheClient;
+    @Resource
+    IdBloomFilter idBloomFilter;
+    @Resource
+    CacheConsistency cacheConsistency;
+    @Resource
+    ShopGeoIndex shopGeoIndex;
+    @Resource
+    ShopNameIndex shopNameIndex;
+    @Resource
+    ShopListingCache shopListingCache;
+    @Resource
+    ShopCatalog shopCatalog;
+
+    /**
+     * 店铺缓存过期时间在30分钟基础上随机增加，避免批量写入的缓存同时过期
+     * 店铺更新后由一致性处理在事务提交后查询最新数据写入缓存
+     */
+    @PostConstruct
+    private void init() {
+        cacheClient.registerTtlPolicy(CACHE_SHOP_KEY,
+                CacheTtlPolicy.of(CACHE_SHOP_TTL, TimeUnit.MINUTES, CACHE_SHOP_TTL_JITTER));
+        cacheConsistency.register(CACHE_SHOP_KEY, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
     @Override
     public Result queryById(Long id) {
+        //布隆过滤器判断不存在的店铺，直接返回，不访问Redis和数据库
+        if (!idBloomFilter.mightContain(IdBloomFilter.SHOP, id)) {
+            return Result.fail("店铺不存在");
+        }
         //解决缓存穿透
         Shop shop = cacheClient.queryWithPassThrough
                 (CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
@@ -70,6 +125,25 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    /**
+     * 新增店铺，同时写入布隆过滤器和GEO数据
+     *
+     * @param shop
+     */
+    @Override
+    public boolean save(Shop shop) {
+        boolean success = super.save(shop);
+        if (success) {
+            idBloomFilter.add(IdBloomFilter.SHOP, shop.getId());
+            saveShopGeo(shop);
+            shopGeoIndex.update(shop);
+            shopNameIndex.update(shop);
+            shopListingCache.update(null, shop);
+            shopCatalog.update(shop);
+        }
+        return success;
+    }
+
     /**
      * 更新数据
      *
@@ -80,12 +154,39 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public Result update(Shop shop) {
         Long id = shop.getId();
         if (id == null) return Result.fail("店铺ID不能为空");
-        //先更新数据库，再删除缓存
+        Shop old = getById(id);
+        if (old == null) return Result.fail("店铺不存在");
+        //先更新数据库，事务提交后再处理缓存（删除、延迟双删或写入最新数据）
         shopService.updateById(shop);
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        cacheConsistency.afterUpdate(CACHE_SHOP_KEY, id);
+        //更新后的完整数据（只更新了传入的非空字段）
+        Shop current = BeanUtil.copyProperties(old, Shop.class);
+        BeanUtil.copyProperties(shop, current, CopyOptions.create().setIgnoreNullValue(true));
+        cacheConsistency.afterCommit(() -> {
+            //店铺类型变化时从原类型的GEO数据中移除
+            if (old.getTypeId() != null && !old.getTypeId().equals(current.getTypeId())) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+            }
+            saveShopGeo(current);
+            shopGeoIndex.update(current);
+            shopNameIndex.update(current);
+            shopListingCache.update(old.getTypeId(), current);
+            shopCatalog.update(current);
+        });
         return Result.ok();
     }
 
+    /**
+     * 写入店铺坐标到对应类型的GEO数据中
+     */
+    private void saveShopGeo(Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+    }
+
 
     /**
      * 基于Redis对于GEO支持，通过前端传递店铺经纬度实现 附近店铺功能
@@ -97,12 +198,22 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return
      */
     @Override
-    public Result queryShopByType(Integer typeId, Integer current, Long x, Long y) {
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sortBy) {
         //不需要根据坐标查询
         if (x == null || y == null) {
+            String sort = shopListingCache.resolveSort(sortBy);
+            //按排序从Redis读取一页店铺id，店铺数据批量从缓存读取
+            List<Long> ids = shopListingCache.page(typeId.longValue(), sort,
+                    (current - 1) * DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+            if (ids != null) {
+                return Result.ok(queryShopsInOrder(ids));
+            }
+            //列表缓存不可用时查询数据库
             Page<Shop> page = shopService.query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, DEFAULT_PAGE_SIZE));
+                    .orderBy(true, shopListingCache.isAscending(sort), shopListingCache.column(sort))
+                    .orderByAsc("id")
+                    .page(new Page<>(current, DEFAULT_PAGE_SIZE).setSearchCount(false));
             // 返回数据
             return Result.ok(page.getRecords());
         }
@@ -111,43 +222,288 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         int from = (current - 1) * DEFAULT_PAGE_SIZE;
         int end = current * DEFAULT_PAGE_SIZE;
 
-        //查询Redis 按照距离排序进行分类  这里暂时设置查询指定坐标周围5km
-        String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results =
-                stringRedisTemplate.opsForGeo()
-                        .search(key, GeoReference.fromCoordinate(x, y), new Distance(5000),
-                                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end));
-        if (results == null) {
-            return Result.fail("附近没有店铺！");
+        //与滚动查询使用相同的自适应半径：坐标索引逐圈扩展，找到end个即停止；否则Redis GEO从初始半径开始加倍
+        List<ShopGeoIndex.Neighbor> neighbors = shopGeoIndex.isReady()
+                ? shopGeoIndex.nearby(typeId, x, y, nearbyMaxRadius, null, null, end)
+                : searchGeoExpanding(typeId, x, y, nearbyInitialRadius, null, null, end);
+        if (neighbors.size() <= from) {
+            //分页参数起始from 超过数据量
+            return Result.ok(Collections.emptyList());
         }
+        //截取 from - end 的店铺id和距离
+        LinkedHashMap<Long, Double> distanceMap = new LinkedHashMap<>(neighbors.size() * 2);
+        neighbors.stream().skip(from).forEach(neighbor -> distanceMap.put(neighbor.getId(), neighbor.getDistance()));
+        return Result.ok(queryShopsWithDistance(distanceMap));
+    }
 
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size()<= from){
-            //分页参数起始from 超过数据量
+    /**
+     * 根据名称关键字分页查询店铺，名称索引可用时按相关度（匹配程度、评分、销量）排序，店铺数据批量从缓存读取
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        List<Long> ids = shopNameIndex.search(name, (current - 1) * MAX_PAGE_SIZE, MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        return Result.ok(queryShopsInOrder(ids));
+    }
+
+    /**
+     * 店铺名称前缀联想
+     */
+    @Override
+    public Result suggestShopName(String prefix, Integer limit) {
+        if (!shopNameIndex.isReady()) {
             return Result.ok(Collections.emptyList());
         }
-        ArrayList<Long> idList = new ArrayList<>(list.size());
-        HashMap<String, Distance> distanceMap = new HashMap<>(list.size());
-
-        //截取 from - end 的list集合并进行操作
-        list.stream().skip(from).forEach(result -> {
-            //获取店铺id
-            String ShopIdStr = result.getContent().getName();
-            idList.add(Long.valueOf(ShopIdStr));
-            //获取店铺距离
-            Distance distance = result.getDistance();
-            distanceMap.put(ShopIdStr, distance);
+        List<ShopSuggestion> suggestions = new ArrayList<>();
+        shopNameIndex.suggest(prefix, Math.min(limit, MAX_PAGE_SIZE))
+                .forEach((id, name) -> suggestions.add(new ShopSuggestion(id, name)));
+        return Result.ok(suggestions);
+    }
+
+    /**
+     * 按价格、评分、商圈、营业时间、距离等条件筛选店铺，排序后分页
+     * 筛选目录可用时在内存中计算；否则查询数据库，营业时间和距离条件无法在数据库中判断，
+     * 有这两个条件时查询满足其他条件的店铺，在内存中筛选、排序后分页
+     */
+    @Override
+    public Result filterShops(ShopFilter filter) {
+        int current = filter.getCurrent() == null || filter.getCurrent() < 1 ? 1 : filter.getCurrent();
+        int from = (current - 1) * DEFAULT_PAGE_SIZE;
+        if (shopCatalog.isReady()) {
+            ShopCatalog.Page page = shopCatalog.query(filter, from, DEFAULT_PAGE_SIZE);
+            return Result.ok(queryShopsWithDistance(page.getIds(), page.getDistances()), page.getTotal());
+        }
+        boolean openNow = Boolean.TRUE.equals(filter.getOpenNow());
+        boolean hasLocation = filter.getX() != null && filter.getY() != null;
+        String sort = shopListingCache.resolveSort(filter.getSortBy());
+        if (!openNow && !hasLocation) {
+            Page<Shop> page = filterQuery(filter)
+                    .orderBy(true, shopListingCache.isAscending(sort), shopListingCache.column(sort))
+                    .orderByAsc("id")
+                    .page(new Page<>(current, DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords(), page.getTotal());
+        }
+        //与筛选目录相同：传入坐标时默认按距离排序
+        boolean distanceSort = hasLocation
+                && (filter.getSortBy() == null || ShopCatalog.SORT_DISTANCE.equals(filter.getSortBy()));
+        //只查询筛选和排序需要的字段，店铺数据分页后批量从缓存读取
+        List<Shop> rows = filterQuery(filter)
+                .select("id", "score", "sold", "avg_price", "open_hours", "x", "y")
+                .orderBy(!distanceSort, shopListingCache.isAscending(sort), shopListingCache.column(sort))
+                .orderByAsc("id")
+                .list();
+        LocalTime now = LocalTime.now();
+        int minute = now.getHour() * 60 + now.getMinute();
+        List<Shop> matched = new ArrayList<>(rows.size());
+        for (Shop row : rows) {
+            if (openNow && !ShopCatalog.isOpen(ShopCatalog.parseOpenHours(row.getOpenHours()), minute)) {
+                continue;
+            }
+            if (hasLocation) {
+                if (row.getX() == null || row.getY() == null) {
+                    continue;
+                }
+                double distance = ShopGeoIndex.distance(filter.getX(), filter.getY(), row.getX(), row.getY());
+                if (filter.getMaxDistance() != null && distance > filter.getMaxDistance()) {
+                    continue;
+                }
+                row.setDistance(distance);
+            }
+            matched.add(row);
+        }
+        if (distanceSort) {
+            //数据库已按id排序，稳定排序后距离相同的店铺仍按id排序
+            matched.sort(Comparator.comparingDouble(Shop::getDistance));
+        }
+        List<Long> ids = new ArrayList<>(DEFAULT_PAGE_SIZE);
+        List<Double> distances = new ArrayList<>(DEFAULT_PAGE_SIZE);
+        for (int i = from; i < matched.size() && ids.size() < DEFAULT_PAGE_SIZE; i++) {
+            ids.add(matched.get(i).getId());
+            distances.add(matched.get(i).getDistance());
+        }
+        return Result.ok(queryShopsWithDistance(ids, distances), (long) matched.size());
+    }
+
+    /**
+     * 数据库可以判断的筛选条件：类型、商圈、价格、评分
+     */
+    private QueryChainWrapper<Shop> filterQuery(ShopFilter filter) {
+        return query()
+                .eq(filter.getTypeId() != null, "type_id", filter.getTypeId())
+                .eq(StrUtil.isNotBlank(filter.getArea()), "area", filter.getArea())
+                .ge(filter.getMinPrice() != null, "avg_price", filter.getMinPrice())
+                .le(filter.getMaxPrice() != null, "avg_price", filter.getMaxPrice())
+                .ge(filter.getMinScore() != null, "score", filter.getMinScore());
+    }
+
+    /**
+     * 按顺序批量查询店铺，距离不为null时设置距离
+     */
+    private List<Shop> queryShopsWithDistance(List<Long> ids, List<Double> distances) {
+        Map<Long, Shop> shops = queryShops(ids);
+        List<Shop> shopList = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Shop cached = shops.get(ids.get(i));
+            if (cached == null) {
+                continue;
+            }
+            Shop shop = cached;
+            if (distances.get(i) != null) {
+                //本地缓存中的对象被多个请求共享，复制后再设置距离
+                shop = BeanUtil.copyProperties(cached, Shop.class);
+                shop.setDistance(distances.get(i));
+            }
+            shopList.add(shop);
+        }
+        return shopList;
+    }
+
+    /**
+     * 按距离游标滚动查询附近店铺，每页的查询成本与翻页深度无关
+     * 1. 坐标索引可用时，从游标所在的圈开始逐圈扩展，找到一页即停止，半径随店铺密度自适应
+     * 2. 否则使用Redis GEO，从游标距离的两倍（至少初始半径）开始查询，数量不足一页时半径加倍，直到最大半径
+     *
+     * @param lastDistance 上一页最后一个店铺的距离，第一页为null
+     * @param lastId       上一页最后一个店铺的id
+     */
+    @Override
+    public Result queryShopNearby(Integer typeId, Double x, Double y, Double lastDistance, Long lastId) {
+        int size = DEFAULT_PAGE_SIZE;
+        //多查询一个，判断是否还有下一页
+        List<ShopGeoIndex.Neighbor> neighbors = shopGeoIndex.isReady()
+                ? shopGeoIndex.nearby(typeId, x, y, nearbyMaxRadius, lastDistance, lastId, size + 1)
+                : searchGeoExpanding(typeId, x, y,
+                        Math.max(nearbyInitialRadius, lastDistance == null ? 0 : lastDistance * 2),
+                        lastDistance, lastId, size + 1);
+        //找到一页时为实际查询到的距离，否则为最大半径
+        double radius = neighbors.size() > size ? neighbors.get(neighbors.size() - 1).getDistance() : nearbyMaxRadius;
+        boolean hasMore = neighbors.size() > size;
+        if (hasMore) {
+            neighbors = neighbors.subList(0, size);
+        }
+        LinkedHashMap<Long, Double> distanceMap = new LinkedHashMap<>(neighbors.size() * 2);
+        neighbors.forEach(neighbor -> distanceMap.put(neighbor.getId(), neighbor.getDistance()));
+
+        NearbyResult result = new NearbyResult();
+        result.setList(queryShopsWithDistance(distanceMap));
+        result.setRadius(radius);
+        result.setHasMore(hasMore);
+        if (!neighbors.isEmpty()) {
+            ShopGeoIndex.Neighbor last = neighbors.get(neighbors.size() - 1);
+            result.setLastDistance(last.getDistance());
+            result.setLastId(last.getId());
+        } else {
+            result.setLastDistance(lastDistance);
+            result.setLastId(lastId);
+        }
+        return Result.ok(result);
+    }
+
+    /**
+     * Redis GEO从指定半径开始查询，数量不足limit个时半径加倍，直到最大半径
+     */
+    private List<ShopGeoIndex.Neighbor> searchGeoExpanding(Integer typeId, Double x, Double y, double radius,
+                                                           Double lastDistance, Long lastId, int limit) {
+        radius = Math.min(nearbyMaxRadius, radius);
+        while (true) {
+            List<ShopGeoIndex.Neighbor> neighbors = searchGeo(typeId, x, y, radius, lastDistance, lastId, limit);
+            if (neighbors.size() >= limit || radius >= nearbyMaxRadius) {
+                return neighbors;
+            }
+            radius = Math.min(nearbyMaxRadius, radius * 2);
+        }
+    }
+
+    /**
+     * Redis GEO查询半径内的店铺，过滤掉游标之前的店铺，按（距离，店铺id）排序后返回前limit个
+     * 按距离升序只取 COUNT 个，游标之前的店铺也占用数量，过滤后不足limit个且结果被截断时 COUNT 加倍重新查询；
+     * 被截断时与最远一个距离相同的店铺可能没有全部返回，不作为结果，保证按（距离，店铺id）翻页不遗漏
+     */
+    private List<ShopGeoIndex.Neighbor> searchGeo(Integer typeId, Double x, Double y, double radius,
+                                                  Double lastDistance, Long lastId, int limit) {
+        int count = limit;
+        while (true) {
+            GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo()
+                    .search(SHOP_GEO_KEY + typeId, GeoReference.fromCoordinate(x, y), new Distance(radius),
+                            RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs()
+                                    .includeDistance().sortAscending().limit(count));
+            if (results == null) {
+                return Collections.emptyList();
+            }
+            List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = results.getContent();
+            boolean truncated = content.size() >= count;
+            double farthest = content.isEmpty() ? 0 : content.get(content.size() - 1).getDistance().getValue();
+            List<ShopGeoIndex.Neighbor> neighbors = new ArrayList<>();
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : content) {
+                long id = Long.parseLong(result.getContent().getName());
+                double distance = result.getDistance().getValue();
+                if (truncated && distance >= farthest) {
+                    continue;
+                }
+                if (ShopGeoIndex.isAfter(distance, id, lastDistance, lastId)) {
+                    neighbors.add(new ShopGeoIndex.Neighbor(id, distance));
+                }
+            }
+            if (neighbors.size() >= limit || !truncated) {
+                neighbors.sort(ShopGeoIndex.ORDER);
+                return neighbors.size() > limit ? neighbors.subList(0, limit) : neighbors;
+            }
+            count *= 2;
+        }
+    }
+
+    /**
+     * 按顺序批量查询店铺并设置距离，店铺数据一次访问缓存，未命中的一次查询数据库
+     *
+     * @param distanceMap 店铺id -> 距离（米），按距离排序
+     */
+    private List<Shop> queryShopsWithDistance(LinkedHashMap<Long, Double> distanceMap) {
+        Map<Long, Shop> shops = queryShops(distanceMap.keySet());
+        List<Shop> shopList = new ArrayList<>(distanceMap.size());
+        distanceMap.forEach((id, distance) -> {
+            Shop cached = shops.get(id);
+            if (cached != null) {
+                //本地缓存中的对象被多个请求共享，复制后再设置距离
+                Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+                shop.setDistance(distance);
+                shopList.add(shop);
+            }
         });
+        return shopList;
+    }
 
-        //解析得到的shopId集合,进行查询返回
-        String idstr = StrUtil.join(",", idList);
-        List<Shop> shopList = query().in("id", idList).last("ORDER BY FIELD(id," + idstr + ")").list();
-        for (Shop shop : shopList) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+
+    /**
+     * 按id顺序批量查询店铺，跳过不存在的店铺
+     */
+    private List<Shop> queryShopsInOrder(List<Long> ids) {
+        Map<Long, Shop> shops = queryShops(ids);
+        List<Shop> shopList = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = shops.get(id);
+            if (shop != null) {
+                shopList.add(shop);
+            }
         }
-        return Result.ok(shopList);
+        return shopList;
     }
 
+    /**
+     * 批量查询店铺，一次访问缓存，未命中的一次查询数据库
+     */
+    private Map<Long, Shop> queryShops(Collection<Long> shopIds) {
+        return cacheClient.queryBatch(CACHE_SHOP_KEY, shopIds, Shop.class,
+                ids -> listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
     // 缓存穿透(客户端请求的数据在缓存中和数据库中都不存在，这样缓存永远不会生效，这些请求都会打到数据库)
 
@@ -11,6 +11,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -43,6 +44,8 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    IdBloomFilter idBloomFilter;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -161,8 +164,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         User user = new User();
         user.setPhone(phone);
         user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(4));
-        //保存用户
+        //保存用户，同时写入布隆过滤器
         save(user);
+        idBloomFilter.add(IdBloomFilter.USER, user.getId());
         return user;
     }
 }
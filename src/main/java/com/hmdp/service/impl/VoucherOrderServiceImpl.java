@@ -1,32 +1,42 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.OrderResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillOrderState;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SeckillVoucherScheduler;
+import com.hmdp.utils.SoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 
 // 基于Redis的Stream结构作为消息队列，实现异步秒杀下单
@@ -51,11 +61,25 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     StringRedisTemplate stringRedisTemplate;
     @Resource
-    RedissonClient redissonClient;
-    @Resource
     RedisIdWorker redisIdWorker;
+    @Resource
+    SoldOutRegistry soldOutRegistry;
+    @Resource
+    SeckillStockShards seckillStockShards;
+    @Resource
+    SeckillOrderState seckillOrderState;
+    //调度器依赖订单服务对账，延迟注入避免循环依赖
+    @Lazy
+    @Resource
+    SeckillVoucherScheduler seckillVoucherScheduler;
     //读取lua脚本
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    /**
+     * 请求令牌处理中，以及处理结果的前缀
+     */
+    private static final String TOKEN_PENDING = "PENDING";
+    private static final String TOKEN_OK = "ok:";
+    private static final String TOKEN_FAIL = "fail:";
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -63,152 +87,238 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    //创建线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-
     /**
-     * 类被加载时就初始化线程，用于执行任务
-     */
-//    @PostConstruct
-//    private void init() {
-//        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-//    }
-
-    /**
-     * 创建线程读取消息队列，并且不断往数据库写入订单信息
+     * 批量处理订单：先整批写入，失败时（如数据库库存与Redis不一致）逐条写入
+     * 订单消费者按用户id将订单分配到固定的单线程通道，同一用户的订单不会并发处理，不需要加锁
+     *
+     * @param voucherOrders 一次从消息队列读取的订单
+     * @return 处理失败需要重试的订单
      */
-//    private class VoucherOrderHandler implements Runnable {
-//        /**
-//         * 队列名称
-//         */
-//        String queueName = "stream.orders";
-//        @Override
-//        public void run() {
-//            while (true) {
-//                try {
-//                    //  1.获取stream消息队列订单信息 XREADGROUP GROUP g1 C1 COUNT 1 BLOCK 2000 STREAMS streams.order >
-//                    VoucherOrder voucherOrder = null;
-//                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-//                            Consumer.from("g1", "c1"),
-//                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2000)),
-//                            StreamOffset.create(queueName, ReadOffset.lastConsumed())//从最后一个消费的消息开始
-//                    );
-//                    //  2.判断消息获取是否成功
-//                    if (list == null || list.isEmpty()) {
-//                        //  2.1 获取失败，进行下次循环
-//                        continue;
-//                    }
-//                    //解析消息中的数据
-//                    MapRecord<String, Object, Object> record = list.get(0);
-//                    Map<Object, Object> values = record.getValue();
-//                    BeanUtil.fillBeanWithMap(values, voucherOrder, true);
-//                    //  3.获取成功，下单
-//                    handleVoucherOrder(voucherOrder);
-//                    //  4.ACK确认 即从PendingList中移除已经消费的消息
-//                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-//                } catch (Exception e) {
-//                    handlePendingList();
-//                    log.error("处理订单异常");
-//                }
-//            }
-//        }
-//
-//        private void handlePendingList() {
-//            while (true) {
-//                try {
-//                    //  1.获取pending-list中订单信息 XREADGROUP GROUP g1 C1 COUNT 1  STREAMS streams.order 0
-//                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-//                            Consumer.from("g1", "c1"),
-//                            StreamOffset.create(queueName, ReadOffset.from("0"))//表达从头开始
-//                    );
-//                    //  2.判断消息获取是否成功
-//                    if (list == null || list.isEmpty()) {
-//                        //  2.1 获取失败，说明pending-list中没有为确认消息，结束循环
-//                        break;
-//                    }
-//                    //解析消息中的数据
-//                    MapRecord<String, Object, Object> record = list.get(0);
-//                    Map<Object, Object> values = record.getValue();
-//                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-//                    //  3.获取成功，下单
-//                    handleVoucherOrder(voucherOrder);
-//                    //  4.ACK确认 即从PendingList中移除已经消费的消息
-//                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-//                } catch (Exception e) {
-//                    log.error("处理订单异常 Pending-list错误");
-//                    try {
-//                        Thread.sleep(20);
-//                    } catch (InterruptedException ex) {
-//                        throw new RuntimeException(ex);
-//                    }
-//                }
-//            }
-//        }
-//
-//    }
+    @Override
+    public List<VoucherOrder> handleVoucherOrders(List<VoucherOrder> voucherOrders) {
+        List<VoucherOrder> succeeded = new ArrayList<>(voucherOrders.size());
+        Map<VoucherOrder, String> rejected = new HashMap<>();
+        try {
+            Set<Long> persisted = proxy.createVoucherOrders(voucherOrders);
+            for (VoucherOrder voucherOrder : voucherOrders) {
+                if (persisted.contains(voucherOrder.getId())) {
+                    succeeded.add(voucherOrder);
+                } else {
+                    //写入时唯一索引冲突且数据库中不存在，同一用户已经有另一个订单
+                    log.error("当前用户只能抢购一张优惠券 orderId:{}", voucherOrder.getId());
+                    rejected.put(voucherOrder, "不可以重复下单");
+                }
+            }
+            updateOrderState(succeeded, rejected);
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.warn("批量写入订单失败，改为逐条写入 size:{}", voucherOrders.size(), e);
+            succeeded.clear();
+            rejected.clear();
+        }
+        List<VoucherOrder> failed = new ArrayList<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            try {
+                if (proxy.createVoucherOrder(voucherOrder)) {
+                    succeeded.add(voucherOrder);
+                } else {
+                    rejected.put(voucherOrder, "库存不足");
+                }
+            } catch (DuplicateKeyException e) {
+                //消息重复投递时订单已经写入，否则是同一用户的另一个订单
+                log.error("当前用户只能抢购一张优惠券 orderId:{}", voucherOrder.getId());
+                if (getById(voucherOrder.getId()) != null) {
+                    succeeded.add(voucherOrder);
+                } else {
+                    rejected.put(voucherOrder, "不可以重复下单");
+                }
+            } catch (Exception e) {
+                log.error("写入订单失败 orderId:{}", voucherOrder.getId(), e);
+                failed.add(voucherOrder);
+            }
+        }
+        updateOrderState(succeeded, rejected);
+        return failed;
+    }
 
     /**
-     * 创建订单 使用Redisson提供的简单分布式锁
-     *
-     * @param voucherOrder
+     * 更新订单处理状态，失败不影响订单处理，用户查询不到状态时从数据库查询
      */
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissonClient.getLock("lock:voucherOrder:" + userId);
-        boolean isLock = lock.tryLock();
-        if (!isLock) {
-            log.error("不允许重复下单");
-            return;
-        }
+    private void updateOrderState(List<VoucherOrder> succeeded, Map<VoucherOrder, String> rejected) {
         try {
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            //手动释放锁
-            lock.unlock();
+            seckillOrderState.update(succeeded, rejected);
+        } catch (Exception e) {
+            log.error("更新订单状态失败", e);
         }
     }
 
-    //初始化代理对象
+    //注入自身的代理对象，使createVoucherOrder的事务生效
+    @Resource
     private IVoucherOrderService proxy;
 
     /**
      * 秒杀券下单
+     * 携带请求令牌时，同一令牌只处理一次，重复提交返回第一次的处理结果
      *
      * @param voucherId
+     * @param requestToken 客户端生成的请求令牌，可以为空
      */
     @Override
-    public Result seckillVoucher(Long voucherId) {
+    public Result seckillVoucher(Long voucherId, String requestToken) {
         //获取用户Id
         Long userId = UserHolder.getUser().getId();
+        if (StrUtil.isBlank(requestToken)) {
+            return seckillVoucher(voucherId, userId);
+        }
+        if (requestToken.length() > 64) {
+            return Result.fail("请求令牌过长");
+        }
+        String tokenKey = SECKILL_TOKEN_KEY + userId;
+        Boolean first = stringRedisTemplate.opsForHash().putIfAbsent(tokenKey, requestToken, TOKEN_PENDING);
+        if (!BooleanUtil.isTrue(first)) {
+            //重复提交，返回第一次的处理结果
+            Object outcome = stringRedisTemplate.opsForHash().get(tokenKey, requestToken);
+            return decodeOutcome(outcome == null ? TOKEN_PENDING : outcome.toString());
+        }
+        stringRedisTemplate.expire(tokenKey, SECKILL_TOKEN_TTL, TimeUnit.HOURS);
+        Result result;
+        try {
+            result = seckillVoucher(voucherId, userId);
+        } catch (RuntimeException e) {
+            //处理异常，允许使用同一令牌重试
+            stringRedisTemplate.opsForHash().delete(tokenKey, requestToken);
+            throw e;
+        }
+        stringRedisTemplate.opsForHash().put(tokenKey, requestToken, encodeOutcome(result));
+        return result;
+    }
+
+    private static String encodeOutcome(Result result) {
+        return BooleanUtil.isTrue(result.getSuccess()) ? TOKEN_OK + result.getData() : TOKEN_FAIL + result.getErrorMsg();
+    }
+
+    private static Result decodeOutcome(String outcome) {
+        if (outcome.startsWith(TOKEN_OK)) {
+            return Result.ok(Long.valueOf(outcome.substring(TOKEN_OK.length())));
+        }
+        if (outcome.startsWith(TOKEN_FAIL)) {
+            return Result.fail(outcome.substring(TOKEN_FAIL.length()));
+        }
+        return Result.fail("请求正在处理中");
+    }
+
+    private Result seckillVoucher(Long voucherId, Long userId) {
+        return seckillVoucher(voucherId, userId, false);
+    }
+
+    /**
+     * @param preheated 是否已经因为Redis中没有库存立即预热过，只预热一次
+     */
+    private Result seckillVoucher(Long voucherId, Long userId, boolean preheated) {
+        //已售罄的优惠券直接返回，不再执行Lua脚本
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         //生成订单Id
         Long orderId = redisIdWorker.nextId("order");
+        //库存分片的优惠券
+        int shards = seckillStockShards.getShardCount(voucherId);
+        if (shards > 1) {
+            return seckillVoucherSharded(voucherId, userId, orderId, shards, preheated);
+        }
         //执行lua脚本，实现对库存，超卖的判断，同时将生成订单写入Redis的阻塞队列中，等待下一步写入数据库
-//        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
-//                Collections.emptyList(),
-//                voucherId.toString(),
-//                userId.toString(),
-//                String.valueOf(orderId));
-//        if (result.intValue() != 0) {
-//            return Result.fail(result.intValue() == 1 ? "库存不足" : "不可以重复下单");
-//        }
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Collections.emptyList(),
+                voucherId.toString(),
+                userId.toString(),
+                String.valueOf(orderId));
+        if (result == null || result.intValue() != 0) {
+            if (result != null && result.intValue() == 2) {
+                return Result.fail("不可以重复下单");
+            }
+            if (result != null && result.intValue() == 4) {
+                return Result.fail("秒杀尚未开始");
+            }
+            if (result != null && result.intValue() == 5) {
+                return Result.fail("秒杀已经结束");
+            }
+            if (result != null && result.intValue() == 6) {
+                return onStockMissing(voucherId, userId, preheated);
+            }
+            //库存不足，标记售罄并通知所有节点
+            soldOutRegistry.markSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        seckillOrderState.queued(orderId, userId);
         //返回用户订单信息
         return Result.ok(orderId);
     }
 
+    /**
+     * 库存分片模式下单：分片key在集群中位于不同节点，Lua脚本扣减库存后将订单写入该分片的消息队列
+     */
+    private Result seckillVoucherSharded(Long voucherId, Long userId, Long orderId, int shards, boolean preheated) {
+        int shard = seckillStockShards.acquire(voucherId, userId, orderId, shards);
+        if (shard == SeckillStockShards.DUPLICATE) {
+            return Result.fail("不可以重复下单");
+        }
+        if (shard == SeckillStockShards.NOT_STARTED) {
+            return Result.fail("秒杀尚未开始");
+        }
+        if (shard == SeckillStockShards.ENDED) {
+            return Result.fail("秒杀已经结束");
+        }
+        if (shard == SeckillStockShards.STOCK_MISSING) {
+            return onStockMissing(voucherId, userId, preheated);
+        }
+        if (shard == SeckillStockShards.SOLD_OUT) {
+            //所有分片库存不足，标记售罄并通知所有节点
+            soldOutRegistry.markSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        seckillOrderState.queued(orderId, userId);
+        return Result.ok(orderId);
+    }
+
+    /**
+     * Redis中还没有库存（还没有预热或数据丢失）时不能标记售罄，立即预热后重新下单
+     */
+    private Result onStockMissing(Long voucherId, Long userId, boolean preheated) {
+        if (preheated || !seckillVoucherScheduler.preheat(voucherId)) {
+            return Result.fail("秒杀尚未开始");
+        }
+        return seckillVoucher(voucherId, userId, true);
+    }
+
+    /**
+     * 查询秒杀订单处理结果，Redis中的状态过期后从数据库查询
+     *
+     * @param orderId 订单id
+     */
+    @Override
+    public Result queryOrderResult(Long orderId) {
+        Long userId = UserHolder.getUser().getId();
+        OrderResult result = seckillOrderState.get(orderId, userId);
+        if (result != null) {
+            return Result.ok(result);
+        }
+        Integer count = query().eq("id", orderId).eq("user_id", userId).count();
+        if (count == 0) {
+            return Result.fail("订单不存在");
+        }
+        return Result.ok(new OrderResult(orderId, SeckillOrderState.SUCCESS, null));
+    }
+
 
     /**
      * 创建优惠券订单（创建单独线程，读取Redis中的堵塞队列，异步执行写入数据库）
      *
      * @param voucherOrder 优惠券对象
+     * @return 库存不足时返回false
      */
+    @Override
     @Transactional
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
-        //判断一人一单
-        Long userId = voucherOrder.getUserId();
-        Integer count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).count();
-        if (count > 0) {
-            log.error("当前用户只能抢购一张优惠券");
-        }
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
         //扣减库存
         boolean success = seckillVoucherService.update()
                 .setSql("stock= stock -1")
@@ -216,9 +326,49 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .update();
         if (!success) {
             log.error("当前库存不足");
+            return false;
         }
-        //写入订单信息
+        //写入订单信息，一人一单由 (user_id, voucher_id) 唯一索引保证，重复时抛出DuplicateKeyException并回滚库存
         save(voucherOrder);
+        return true;
+    }
+
+    /**
+     * 批量创建优惠券订单，按优惠券分组，每种优惠券一条多行INSERT和一条扣减库存的UPDATE
+     * 唯一索引冲突的行不写入，写入前后按订单id查询，只按新写入的订单数量扣减库存；库存不足时抛出异常回滚整批
+     * 写入前已存在的是重复投递的订单，写入后仍不存在的是同一用户的另一个订单
+     *
+     * @param voucherOrders 订单列表
+     * @return 数据库中存在的订单id
+     */
+    @Override
+    @Transactional
+    public Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        Set<Long> persisted = new HashSet<>(voucherOrders.size());
+        Map<Long, List<VoucherOrder>> ordersByVoucher = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            List<VoucherOrder> orders = entry.getValue();
+            List<Long> ids = orders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+            int existing = query().in("id", ids).count();
+            getBaseMapper().insertBatchSkipDuplicate(orders);
+            List<VoucherOrder> found = query().select("id").in("id", ids).list();
+            for (VoucherOrder order : found) {
+                persisted.add(order.getId());
+            }
+            int inserted = found.size() - existing;
+            if (inserted == 0) {
+                continue;
+            }
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + inserted)
+                    .eq("voucher_id", entry.getKey()).ge("stock", inserted)
+                    .update();
+            if (!success) {
+                throw new IllegalStateException("当前库存不足 voucherId:" + entry.getKey());
+            }
+        }
+        return persisted;
     }
 
 
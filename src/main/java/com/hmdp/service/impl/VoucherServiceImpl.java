@@ -1,5 +1,7 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
@@ -7,14 +9,20 @@ import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheConsistency;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.SingleFlight;
+import com.hmdp.utils.SoldOutRegistry;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_TTL;
 
 /**
  * <p>
@@ -31,15 +39,57 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    SoldOutRegistry soldOutRegistry;
+    @Resource
+    SeckillStockShards seckillStockShards;
+
+    @Resource
+    CacheConsistency cacheConsistency;
+    @Resource
+    SingleFlight singleFlight;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        //秒杀开始前预热的优惠券列表
+        String json = stringRedisTemplate.opsForValue().get(CACHE_VOUCHER_KEY + shopId);
+        if (StrUtil.isNotBlank(json)) {
+            return Result.ok(JSONUtil.toList(json, Voucher.class));
+        }
+        // 查询优惠券信息，同一节点并发查询同一店铺时只查询一次数据库
+        List<Voucher> vouchers = singleFlight.execute(CACHE_VOUCHER_KEY + shopId,
+                () -> getBaseMapper().queryVoucherOfShop(shopId));
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    /**
+     * 将店铺的优惠券列表写入缓存，秒杀开始时大量用户同时进入店铺详情，避免同时查询数据库
+     */
+    @Override
+    public void cacheVoucherOfShop(Long shopId) {
+        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        stringRedisTemplate.opsForValue().set(CACHE_VOUCHER_KEY + shopId, JSONUtil.toJsonStr(vouchers),
+                CACHE_VOUCHER_TTL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void evictVoucherOfShop(Long shopId) {
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + shopId);
+    }
+
+    /**
+     * 保存优惠券，事务提交后删除店铺的优惠券列表缓存
+     */
+    @Override
+    public boolean save(Voucher voucher) {
+        boolean success = super.save(voucher);
+        if (voucher.getShopId() != null) {
+            cacheConsistency.afterCommit(() -> evictVoucherOfShop(voucher.getShopId()));
+        }
+        return success;
+    }
+
     /**
      * 新增优惠券
      *
@@ -57,7 +107,40 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        //将秒杀券库存信息存入Redis
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        //将秒杀券库存信息存入Redis，按配置拆分到多个分片
+        seckillStockShards.init(voucher.getId(), voucher.getStock());
+        soldOutRegistry.reset(voucher.getId());
+        //事务提交后写入时间窗口，窗口写入前Lua脚本按尚未开始拒绝下单
+        cacheConsistency.afterCommit(() -> seckillStockShards.setWindow(
+                voucher.getId(), voucher.getBeginTime(), voucher.getEndTime()));
+    }
+
+    /**
+     * 补充秒杀券库存
+     *
+     * @param voucherId 优惠券id
+     * @param count     补充数量
+     */
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer count) {
+        if (count == null || count <= 0) {
+            return Result.fail("补充数量必须大于0");
+        }
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("秒杀券不存在");
+        }
+        //Redis库存同步增加，并清除所有节点的售罄标记
+        seckillStockShards.addStock(voucherId, count);
+        soldOutRegistry.reset(voucherId);
+        Voucher voucher = getById(voucherId);
+        if (voucher != null) {
+            cacheConsistency.afterCommit(() -> evictVoucherOfShop(voucher.getShopId()));
+        }
+        return Result.ok();
     }
 }
@@ -0,0 +1,392 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码，用于Shop、ShopType、Voucher、UserDTO等只包含简单类型字段的实体
+ * 格式：魔数(1) 版本(1) 标志(1) 结构哈希(4) [逻辑过期时间] 空值位图 字段值...
+ * 字段按名称排序依次写入，整数使用变长编码，不写入字段名
+ * 实体类字段变化后结构哈希不同，旧数据解码返回null，由调用方重新加载
+ */
+@Slf4j
+public class BinaryCacheCodec implements CacheCodec {
+
+    /**
+     * 魔数，UTF-8编码的JSON不可能以该字节开头，用于区分新旧格式
+     */
+    public static final byte MAGIC = (byte) 0xB1;
+    private static final byte VERSION = 1;
+    private static final byte FLAG_EXPIRE = 1;
+
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * 判断类型是否所有字段都支持二进制编码
+     */
+    public boolean supports(Class<?> type) {
+        return schemaOf(type) != null;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(value, null);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        Input in = new Input(bytes);
+        if (!readHeader(in, type)) {
+            return null;
+        }
+        if ((bytes[2] & FLAG_EXPIRE) != 0) {
+            in.readVarLong();
+        }
+        return readFields(in, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime) {
+        return write(value, expireTime);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(byte[] bytes, Class<?> type) {
+        Input in = new Input(bytes);
+        if (!readHeader(in, type) || (bytes[2] & FLAG_EXPIRE) == 0) {
+            return null;
+        }
+        long expireMillis = in.readVarLong();
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        redisData.setData(readFields(in, type));
+        return redisData;
+    }
+
+    private byte[] write(Object value, LocalDateTime expireTime) {
+        Schema schema = schemaOf(value.getClass());
+        if (schema == null) {
+            throw new IllegalArgumentException("不支持二进制编码的类型:" + value.getClass().getName());
+        }
+        Output out = new Output(64);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(expireTime == null ? 0 : FLAG_EXPIRE);
+        out.writeInt(schema.hash);
+        if (expireTime != null) {
+            out.writeVarLong(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        try {
+            Field[] fields = schema.fields;
+            Object[] values = new Object[fields.length];
+            byte[] nullBits = new byte[(fields.length + 7) >>> 3];
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = fields[i].get(value);
+                if (values[i] == null) {
+                    nullBits[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.writeBytes(nullBits);
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i] != null) {
+                    writeValue(out, schema.kinds[i], values[i]);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private boolean readHeader(Input in, Class<?> type) {
+        Schema schema = schemaOf(type);
+        if (in.readByte() != MAGIC || in.readByte() != VERSION || schema == null) {
+            return false;
+        }
+        in.readByte();
+        if (in.readInt() != schema.hash) {
+            log.debug("缓存数据结构已变化,type:{}", type.getSimpleName());
+            return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readFields(Input in, Class<T> type) {
+        Schema schema = schemaOf(type);
+        try {
+            T entity = (T) schema.constructor.newInstance();
+            Field[] fields = schema.fields;
+            byte[] nullBits = in.readBytes((fields.length + 7) >>> 3);
+            for (int i = 0; i < fields.length; i++) {
+                if ((nullBits[i >>> 3] & (1 << (i & 7))) == 0) {
+                    fields[i].set(entity, readValue(in, schema.kinds[i]));
+                }
+            }
+            return entity;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeValue(Output out, Kind kind, Object value) {
+        switch (kind) {
+            case LONG:
+                out.writeVarLong(zigZag((Long) value));
+                break;
+            case INT:
+                out.writeVarLong(zigZag((Integer) value));
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+                break;
+            case STRING:
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(bytes.length);
+                out.writeBytes(bytes);
+                break;
+            case DATE_TIME:
+                LocalDateTime time = (LocalDateTime) value;
+                out.writeVarLong(zigZag(time.toEpochSecond(ZoneOffset.UTC)));
+                out.writeVarLong(time.getNano());
+                break;
+            default:
+                throw new IllegalStateException("未知类型:" + kind);
+        }
+    }
+
+    private static Object readValue(Input in, Kind kind) {
+        switch (kind) {
+            case LONG:
+                return unZigZag(in.readVarLong());
+            case INT:
+                return (int) unZigZag(in.readVarLong());
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case STRING:
+                int length = (int) in.readVarLong();
+                return new String(in.readBytes(length), StandardCharsets.UTF_8);
+            case DATE_TIME:
+                long seconds = unZigZag(in.readVarLong());
+                int nano = (int) in.readVarLong();
+                return LocalDateTime.ofEpochSecond(seconds, nano, ZoneOffset.UTC);
+            default:
+                throw new IllegalStateException("未知类型:" + kind);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 获取类型的字段结构，存在不支持的字段类型时返回null
+     */
+    private Schema schemaOf(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = schemas.computeIfAbsent(type, Schema::build);
+        }
+        return schema == Schema.UNSUPPORTED ? null : schema;
+    }
+
+    private enum Kind {
+        LONG, INT, BOOLEAN, DOUBLE, STRING, DATE_TIME
+    }
+
+    /**
+     * 实体类的字段结构
+     */
+    private static class Schema {
+        static final Schema UNSUPPORTED = new Schema(null, new Field[0], new Kind[0], 0);
+
+        final Constructor<?> constructor;
+        final Field[] fields;
+        final Kind[] kinds;
+        final int hash;
+
+        Schema(Constructor<?> constructor, Field[] fields, Kind[] kinds, int hash) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.kinds = kinds;
+            this.hash = hash;
+        }
+
+        static Schema build(Class<?> type) {
+            try {
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            fields.add(field);
+                        }
+                    }
+                }
+                fields.sort(Comparator.comparing(Field::getName));
+                Kind[] kinds = new Kind[fields.size()];
+                StringBuilder signature = new StringBuilder(type.getName());
+                for (int i = 0; i < fields.size(); i++) {
+                    Field field = fields.get(i);
+                    kinds[i] = kindOf(field.getType());
+                    if (kinds[i] == null) {
+                        return UNSUPPORTED;
+                    }
+                    field.setAccessible(true);
+                    signature.append(';').append(field.getName()).append(':').append(kinds[i]);
+                }
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return new Schema(constructor, fields.toArray(new Field[0]), kinds, signature.toString().hashCode());
+            } catch (NoSuchMethodException e) {
+                return UNSUPPORTED;
+            }
+        }
+
+        /**
+         * 只支持包装类型，基本类型字段无法表示空值
+         */
+        static Kind kindOf(Class<?> type) {
+            if (type == Long.class) return Kind.LONG;
+            if (type == Integer.class) return Kind.INT;
+            if (type == Boolean.class) return Kind.BOOLEAN;
+            if (type == Double.class) return Kind.DOUBLE;
+            if (type == String.class) return Kind.STRING;
+            if (type == LocalDateTime.class) return Kind.DATE_TIME;
+            return null;
+        }
+    }
+
+    /**
+     * 可扩容的字节输出
+     */
+    private static class Output {
+        private byte[] buffer;
+        private int position;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * 字节输入
+     */
+    private static class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("变长整数格式错误");
+        }
+    }
+}
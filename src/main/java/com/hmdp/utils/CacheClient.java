@@ -1,20 +1,27 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.ExpiryHistogram;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_REFRESH_KEY;
 
 /**
  * Redis缓存存储方法
@@ -25,9 +32,67 @@ public class CacheClient {
 
     //    也可以通过@Resource注解注入StringRedisTemplate
     private final StringRedisTemplate stringRedisTemplate;
+    //缓存数据经过编解码器编码后以字节数组存储
+    private final RedisTemplate<String, byte[]> byteRedisTemplate;
+    private final CacheCodec cacheCodec;
+    private final LocalCache localCache;
+    private final SingleFlight singleFlight;
+    private final CacheRefresher cacheRefresher;
+    private final CacheMetrics cacheMetrics;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 各个key前缀的过期时间策略
+     */
+    private final Map<String, CacheTtlPolicy> ttlPolicies = new ConcurrentHashMap<>();
+    /**
+     * 没有注册策略时默认的随机过期比例
+     */
+    private final double defaultJitterRatio;
+
+    /**
+     * 空值占位
+     */
+    private static final byte[] NULL_VALUE = new byte[0];
+    /**
+     * 过期时间分布最多扫描的key数量
+     */
+    private static final int HISTOGRAM_MAX_KEYS = 100000;
+    private static final int HISTOGRAM_SCAN_BATCH = 500;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> byteRedisTemplate,
+                       CacheCodec cacheCodec, LocalCache localCache,
+                       SingleFlight singleFlight, CacheRefresher cacheRefresher, CacheMetrics cacheMetrics,
+                       @Value("${hmdp.cache.ttl-jitter:0.1}") double defaultJitterRatio) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.byteRedisTemplate = byteRedisTemplate;
+        this.cacheCodec = cacheCodec;
+        this.localCache = localCache;
+        this.singleFlight = singleFlight;
+        this.cacheRefresher = cacheRefresher;
+        this.cacheMetrics = cacheMetrics;
+        this.defaultJitterRatio = defaultJitterRatio;
+    }
+
+    /**
+     * 注册key前缀的过期时间策略，该前缀下写入缓存时使用策略的过期时间，忽略调用方传入的过期时间
+     */
+    public void registerTtlPolicy(String keyPrefix, CacheTtlPolicy policy) {
+        ttlPolicies.put(keyPrefix, policy);
+    }
+
+    /**
+     * 计算写入缓存时使用的过期时间（秒），已注册策略时使用策略，否则在传入时间上增加默认比例的随机时长
+     */
+    private long ttlSeconds(String keyPrefix, Long time, TimeUnit unit) {
+        CacheTtlPolicy policy = ttlPolicies.get(keyPrefix);
+        if (policy != null) {
+            return policy.nextTtlSeconds();
+        }
+        return CacheTtlPolicy.withJitter(unit.toSeconds(time), defaultJitterRatio);
+    }
+
+    private long nullTtlSeconds() {
+        return CacheTtlPolicy.withJitter(TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), defaultJitterRatio);
     }
 
     /**
@@ -39,7 +104,44 @@ public class CacheClient {
      * @param unit  时间单位
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        byteRedisTemplate.opsForValue().set(key, cacheCodec.encode(value), time, unit);
+    }
+
+    /**
+     * 数据存储Redis，过期时间按照key前缀的策略增加随机时长
+     *
+     * @param keyPrefix Redis缓存key前缀
+     * @param id        缓存key后缀
+     */
+    public void set(String keyPrefix, Object id, Object value, Long time, TimeUnit unit) {
+        byteRedisTemplate.opsForValue().set(
+                keyPrefix + id, cacheCodec.encode(value), ttlSeconds(keyPrefix, time, unit), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 用最新数据覆盖Redis缓存，同时通知所有节点删除本地缓存，数据已不存在时删除缓存
+     *
+     * @param keyPrefix Redis缓存key前缀
+     * @param id        缓存key后缀
+     */
+    public void refresh(String keyPrefix, Object id, Object value, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        set(keyPrefix, id, value, time, unit);
+        localCache.publishInvalidate(key);
+    }
+
+    /**
+     * 删除Redis缓存，同时通知所有节点删除本地缓存
+     *
+     * @param key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.publishInvalidate(key);
     }
 
     /**
@@ -51,10 +153,16 @@ public class CacheClient {
      * @param unit  时间单位
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        writeWithLogicalExpire(key, value, LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+    }
+
+    private void writeWithLogicalExpire(String key, Object value, LocalDateTime expireTime) {
+        if (value == null) {
+            //数据已被删除
+            byteRedisTemplate.delete(key);
+            return;
+        }
+        byteRedisTemplate.opsForValue().set(key, cacheCodec.encodeWithExpire(value, expireTime));
     }
 
     /**
@@ -67,77 +175,382 @@ public class CacheClient {
      */
     public <Entity, ID> Entity queryWithPassThrough(
             String keyPrefix, ID id, Class<Entity> type, Function<ID, Entity> DBFallBack, Long time, TimeUnit unit) {
+        CacheMetrics.Namespace metrics = cacheMetrics.of(keyPrefix);
+        long begin = System.nanoTime();
+        try {
+            return queryWithPassThrough(keyPrefix, id, type, DBFallBack, time, unit, metrics);
+        } finally {
+            metrics.readLatency.record(System.nanoTime() - begin);
+        }
+    }
+
+    private <Entity, ID> Entity queryWithPassThrough(
+            String keyPrefix, ID id, Class<Entity> type, Function<ID, Entity> DBFallBack, Long time, TimeUnit unit,
+            CacheMetrics.Namespace metrics) {
         String key = keyPrefix + id;
-        //从redis查询缓存
-        String entityJson = stringRedisTemplate.opsForValue().get(key);
-        //判断是否存在,不存在直接返回
-        if (StrUtil.isNotBlank(entityJson)) {
-            return JSONUtil.toBean(entityJson, type);
+        //先查询本地缓存，命中则不再访问Redis
+        Entity cached = localCache.get(key, type);
+        if (cached != null) {
+            metrics.localHit.increment();
+            cacheRefresher.touch(key);
+            return cached;
         }
+        //从redis查询缓存，同一次往返查询剩余过期时间，用于过期前提前刷新
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> replies = byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(rawKey);
+            connection.keyCommands().pTtl(rawKey);
+            return null;
+        });
+        byte[] bytes = (byte[]) replies.get(0);
+        Long ttlMillis = replies.get(1) == null ? null : ((Number) replies.get(1)).longValue();
         //判断命中是否空值
-        if (entityJson != null) return null;
+        if (bytes != null && bytes.length == 0) {
+            metrics.nullHit.increment();
+            return null;
+        }
+        //判断是否存在，存在则直接返回（数据结构已变化而无法解码时按未命中处理）
+        if (bytes != null) {
+            Entity entity = cacheCodec.decode(bytes, type);
+            if (entity != null) {
+                metrics.hit.increment();
+                localCache.put(key, entity);
+                if (ttlMillis != null && ttlMillis > 0) {
+                    cacheRefresher.recordHit(key, System.currentTimeMillis() + ttlMillis,
+                            () -> refreshBeforeExpire(keyPrefix, id, DBFallBack, time, unit, metrics),
+                            () -> readExpireMillis(key));
+                }
+                return entity;
+            }
+        }
+        metrics.miss.increment();
+        //同一节点并发未命中同一个key时，只有一个线程查询数据库，其余线程共享结果
+        return singleFlight.execute(key, () -> loadAndCache(keyPrefix, id, DBFallBack, time, unit, metrics));
+    }
+
+    /**
+     * 查询数据库并写回缓存
+     */
+    private <Entity, ID> Entity loadAndCache(
+            String keyPrefix, ID id, Function<ID, Entity> DBFallBack, Long time, TimeUnit unit,
+            CacheMetrics.Namespace metrics) {
+        String key = keyPrefix + id;
         //将查询数据库的逻辑给调用方，接受传递的函数
+        long begin = System.nanoTime();
         Entity entity = DBFallBack.apply(id);
+        metrics.dbLoadLatency.record(System.nanoTime() - begin);
         //如果数据库中不存在，返回错误码，同时将空字符串传递给Redis，避免缓存击透问题
         if (entity == null) {
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(""), CACHE_NULL_TTL, TimeUnit.MINUTES);
+            byteRedisTemplate.opsForValue().set(key, NULL_VALUE, nullTtlSeconds(), TimeUnit.SECONDS);
             return null;
         }
-        //数据库中存在，写入redis中，最后返回数据
-        this.set(key, entity, time, unit);
+        //数据库中存在，写入redis和本地缓存中，最后返回数据
+        this.set(keyPrefix, id, entity, time, unit);
+        localCache.put(key, entity);
         return entity;
     }
 
     /**
-     * 线程池开启用于重建缓存
+     * 在缓存过期前查询数据库并覆盖缓存（refresh-ahead），热点key不会因为过期集中访问数据库
+     * 得到锁后重新查询剩余过期时间，其他节点已经刷新时不查询数据库
+     *
+     * @return 新的过期时间，未执行刷新返回null
      */
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR
-            = Executors.newFixedThreadPool(10);
+    private <Entity, ID> Long refreshBeforeExpire(
+            String keyPrefix, ID id, Function<ID, Entity> DBFallBack, Long time, TimeUnit unit,
+            CacheMetrics.Namespace metrics) {
+        String key = keyPrefix + id;
+        String lockKey = LOCK_CACHE_REFRESH_KEY + key;
+        if (!tryLock(lockKey)) {
+            metrics.lockFailure.increment();
+            return null;
+        }
+        try {
+            Long current = readExpireMillis(key);
+            if (current == null || current - System.currentTimeMillis() > cacheRefresher.getAheadMillis()) {
+                return null;
+            }
+            long begin = System.nanoTime();
+            Entity entity = DBFallBack.apply(id);
+            metrics.dbLoadLatency.record(System.nanoTime() - begin);
+            metrics.rebuild.increment();
+            if (entity == null) {
+                delete(key);
+                return null;
+            }
+            long ttl = ttlSeconds(keyPrefix, time, unit);
+            byteRedisTemplate.opsForValue().set(key, cacheCodec.encode(entity), ttl, TimeUnit.SECONDS);
+            localCache.publishInvalidate(key);
+            return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+        } finally {
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 查询缓存的过期时间（毫秒），key不存在返回null，没有过期时间返回Long.MAX_VALUE
+     */
+    private Long readExpireMillis(String key) {
+        Long ttlMillis = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+        if (ttlMillis == null || ttlMillis == -2) {
+            return null;
+        }
+        return ttlMillis == -1 ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+    }
+
+    /**
+     * 批量查询缓存，用于列表页面一次获取多个实体
+     * 先查本地缓存，再一次MGET查询Redis，未命中的id一次交给数据库批量查询，最后使用管道一次写回（包括空值占位）
+     *
+     * @param keyPrefix       Redis缓存key前缀
+     * @param ids             id集合
+     * @param type            实体类型
+     * @param dbBatchFallback 数据库批量查询函数，返回 id -> 实体，不存在的id不放入结果
+     * @return id -> 实体，按ids的顺序排列，不存在的id不包含在结果中
+     */
+    public <Entity, ID> Map<ID, Entity> queryBatch(
+            String keyPrefix, Collection<ID> ids, Class<Entity> type,
+            Function<Collection<ID>, Map<ID, Entity>> dbBatchFallback, Long time, TimeUnit unit) {
+        CacheMetrics.Namespace metrics = cacheMetrics.of(keyPrefix);
+        long begin = System.nanoTime();
+        Map<ID, Entity> found = new HashMap<>(ids.size() * 2);
+        //1.查询本地缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : new LinkedHashSet<>(ids)) {
+            Entity cached = localCache.get(keyPrefix + id, type);
+            if (cached != null) {
+                metrics.localHit.increment();
+                found.put(id, cached);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        //2.一次MGET查询Redis
+        List<ID> missIds = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<String> keys = new ArrayList<>(remoteIds.size());
+            remoteIds.forEach(id -> keys.add(keyPrefix + id));
+            List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                byte[] bytes = values == null ? null : values.get(i);
+                if (bytes != null && bytes.length == 0) {
+                    //命中空值
+                    metrics.nullHit.increment();
+                    continue;
+                }
+                Entity entity = bytes == null ? null : cacheCodec.decode(bytes, type);
+                if (entity == null) {
+                    metrics.miss.increment();
+                    missIds.add(remoteIds.get(i));
+                } else {
+                    metrics.hit.increment();
+                    found.put(remoteIds.get(i), entity);
+                    localCache.put(keys.get(i), entity);
+                }
+            }
+        }
+        //3.未命中的id一次查询数据库，并使用管道写回缓存；其他线程正在加载的id（单个或批量查询）等待其结果，不重复查询数据库
+        if (!missIds.isEmpty()) {
+            found.putAll(singleFlight.executeBatch(keyPrefix, missIds, loadIds -> {
+                long loadBegin = System.nanoTime();
+                Map<ID, Entity> loaded = dbBatchFallback.apply(loadIds);
+                metrics.dbLoadLatency.record(System.nanoTime() - loadBegin);
+                if (loaded == null) {
+                    loaded = Collections.emptyMap();
+                }
+                writeBatch(keyPrefix, loadIds, loaded, time, unit);
+                for (Map.Entry<ID, Entity> entry : loaded.entrySet()) {
+                    localCache.put(keyPrefix + entry.getKey(), entry.getValue());
+                }
+                return loaded;
+            }));
+        }
+        //4.按照传入的顺序返回
+        Map<ID, Entity> result = new LinkedHashMap<>(found.size() * 2);
+        for (ID id : ids) {
+            Entity entity = found.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+            }
+        }
+        metrics.readLatency.record(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 使用管道批量写入缓存，数据库中不存在的id写入空值，每个key的过期时间单独计算随机时长
+     */
+    public <Entity, ID> void writeBatch(
+            String keyPrefix, Collection<ID> ids, Map<ID, Entity> entities, Long time, TimeUnit unit) {
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : ids) {
+                byte[] rawKey = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                Entity entity = entities.get(id);
+                if (entity == null) {
+                    connection.stringCommands().setEx(rawKey, nullTtlSeconds(), NULL_VALUE);
+                } else {
+                    connection.stringCommands().setEx(rawKey, ttlSeconds(keyPrefix, time, unit), cacheCodec.encode(entity));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 统计key前缀下缓存的过期时间分布，用于提前发现集中过期的时间段
+     *
+     * @param keyPrefix     Redis缓存key前缀
+     * @param bucketSeconds 每个时间段的长度（秒）
+     * @param bucketCount   时间段数量
+     */
+    public ExpiryHistogram expiryHistogram(String keyPrefix, long bucketSeconds, int bucketCount) {
+        //0~bucketCount-1为各个时间段，bucketCount为超出统计范围，bucketCount+1为永不过期
+        long[] counts = new long[bucketCount + 2];
+        long scanned = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(HISTOGRAM_SCAN_BATCH).build();
+        List<String> batch = new ArrayList<>(HISTOGRAM_SCAN_BATCH);
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext() && scanned < HISTOGRAM_MAX_KEYS) {
+                batch.add(cursor.next());
+                scanned++;
+                if (batch.size() >= HISTOGRAM_SCAN_BATCH) {
+                    countExpiry(batch, bucketSeconds, counts);
+                    batch.clear();
+                }
+            }
+        }
+        countExpiry(batch, bucketSeconds, counts);
+        ExpiryHistogram histogram = new ExpiryHistogram();
+        histogram.setKeyPrefix(keyPrefix);
+        histogram.setBucketSeconds(bucketSeconds);
+        List<Long> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(counts[i]);
+        }
+        histogram.setBuckets(buckets);
+        histogram.setBeyond(counts[bucketCount]);
+        histogram.setPersistent(counts[bucketCount + 1]);
+        histogram.setScanned(scanned);
+        return histogram;
+    }
 
+    /**
+     * 使用管道批量查询剩余过期时间并统计
+     */
+    private void countExpiry(List<String> keys, long bucketSeconds, long[] counts) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        int bucketCount = counts.length - 2;
+        List<Object> ttls = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.keyCommands().pTtl(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        for (Object ttl : ttls) {
+            long millis = ttl == null ? -2 : ((Number) ttl).longValue();
+            if (millis == -1) {
+                counts[bucketCount + 1]++;
+            } else if (millis >= 0) {
+                long index = millis / 1000 / bucketSeconds;
+                counts[(int) Math.min(index, bucketCount)]++;
+            }
+        }
+    }
 
     /**
      * 逻辑过期方案解决缓存击穿
      * 解决热点key问题，不存在缓存穿透问题
+     * 最近访问过的key会在逻辑过期前由后台提前重建，已过期时直接返回旧数据并提交重建
      */
     public <Entity, ID> Entity queryWithLogicalExpire(
             String keyPrefix, String lockKeyPrefix, ID id, Class<Entity> type, Function<ID, Entity> DBFallBack, Long time, TimeUnit unit) {
         String key = keyPrefix + id.toString();
+        CacheMetrics.Namespace metrics = cacheMetrics.of(keyPrefix);
+        long begin = System.nanoTime();
         //从redis查询缓存
-        String entityJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        metrics.readLatency.record(System.nanoTime() - begin);
         //判断是否存在,不存在直接返回
-        if (StrUtil.isBlank(entityJson)) return null;
+        if (bytes == null || bytes.length == 0) {
+            metrics.miss.increment();
+            return null;
+        }
 
-        RedisData redisData = JSONUtil.toBean(entityJson, RedisData.class);
-        JSONObject jsonObject = (JSONObject) redisData.getData();
-        Entity entity = JSONUtil.toBean(jsonObject, type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        //重建任务：获取互斥锁后查询数据库重新放入缓存，返回新的逻辑过期时间
+        String lockKey = lockKeyPrefix + id.toString();
+        Supplier<Long> reload = () -> rebuildWithLogicalExpire(key, lockKey, id, type, DBFallBack, time, unit, metrics);
+        Supplier<Long> expiry = () -> readLogicalExpire(key, type);
+        //一次解码得到实体对象和逻辑过期时间
+        RedisData redisData = cacheCodec.decodeWithExpire(bytes, type);
+        if (redisData == null) {
+            //数据结构已变化，按已过期处理
+            metrics.stale.increment();
+            cacheRefresher.recordStale(key, 0L, reload, expiry);
+            return null;
+        }
+        Entity entity = type.cast(redisData.getData());
+        long expireMillis = toEpochMilli(redisData.getExpireTime());
         //判断时间是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        if (expireMillis > System.currentTimeMillis()) {
             //没有过期，直接返回缓存中数据
+            metrics.hit.increment();
+            cacheRefresher.recordHit(key, expireMillis, reload, expiry);
             return entity;
         }
+        //已经过期了，提交缓存重建，直接返回缓存中的过期数据
+        metrics.stale.increment();
+        cacheRefresher.recordStale(key, expireMillis, reload, expiry);
+        return entity;
+    }
 
-        //已经过期了，缓存重建
-        String lockKey = lockKeyPrefix + id.toString();
+    /**
+     * 重建逻辑过期缓存，没有得到锁则代表其他节点正在重建，返回null
+     * 得到锁后重新读取缓存，其他节点已经重建（逻辑过期时间超出提前刷新范围）时不查询数据库，返回null
+     */
+    private <Entity, ID> Long rebuildWithLogicalExpire(
+            String key, String lockKey, ID id, Class<Entity> type, Function<ID, Entity> DBFallBack, Long time,
+            TimeUnit unit, CacheMetrics.Namespace metrics) {
         //获取互斥锁
-        boolean isLock = tryLock(lockKey);
-        if (isLock) {
-            //开始重建，开启独立线程
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {   //调用参数传递中的函数用于查询数据库
-                    Entity data = DBFallBack.apply(id);
-                    //重新放入缓存
-                    this.setWithLogicalExpire(key, data, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unlock(lockKey);
-                }
-            });
+        if (!tryLock(lockKey)) {
+            metrics.lockFailure.increment();
+            return null;
         }
-        //如果没有得到锁，则代表缓存重建中，直接返回缓存中的过期数据
-        return entity;
+        try {
+            Long current = readLogicalExpire(key, type);
+            if (current != null && current - System.currentTimeMillis() > cacheRefresher.getAheadMillis()) {
+                return null;
+            }
+            //调用参数传递中的函数用于查询数据库
+            long begin = System.nanoTime();
+            Entity data = DBFallBack.apply(id);
+            metrics.dbLoadLatency.record(System.nanoTime() - begin);
+            metrics.rebuild.increment();
+            //重新放入缓存
+            LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+            writeWithLogicalExpire(key, data, expireTime);
+            return toEpochMilli(expireTime);
+        } finally {
+            //释放锁
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 读取逻辑过期缓存当前的逻辑过期时间，不存在或数据结构已变化时返回null
+     */
+    private Long readLogicalExpire(String key, Class<?> type) {
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        RedisData redisData = cacheCodec.decodeWithExpire(bytes, type);
+        return redisData == null ? null : toEpochMilli(redisData.getExpireTime());
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
 
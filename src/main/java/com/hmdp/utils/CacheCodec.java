@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存数据编解码
+ * 空值占位统一使用空字节数组，由调用方处理，编解码器不会收到空数组
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码普通缓存数据
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存数据，数据结构与当前类不匹配时返回null
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    /**
+     * 编码带逻辑过期时间的缓存数据
+     */
+    byte[] encodeWithExpire(Object value, LocalDateTime expireTime);
+
+    /**
+     * 解码带逻辑过期时间的缓存数据，返回的RedisData中data已经是type类型，数据结构不匹配时返回null
+     */
+    RedisData decodeWithExpire(byte[] bytes, Class<?> type);
+}
@@ -0,0 +1,200 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_OUTBOX_NAME;
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_OUTBOX_TTL;
+
+/**
+ * 数据库更新后的缓存一致性处理，缓存操作都在事务提交之后执行，避免并发读取在提交前把旧数据写回缓存
+ * 1. delete：提交后删除缓存
+ * 2. double-delete：提交后删除缓存，延迟一段时间再删除一次，清除删除期间被并发读取写回的旧数据
+ * 3. write-through：提交后重新查询数据库，把最新数据直接写入缓存，热点数据更新后不会出现大量未命中
+ * 开启变更记录（outbox）后，变更记录与业务数据在同一事务中写入，后台批量读取后再处理一次，
+ * 节点在提交后、处理缓存前宕机时缓存最终也会被更新
+ */
+@Slf4j
+@Component
+public class CacheConsistency {
+
+    public static final String MODE_DELETE = "delete";
+    public static final String MODE_DOUBLE_DELETE = "double-delete";
+    public static final String MODE_WRITE_THROUGH = "write-through";
+
+    /**
+     * 按key前缀注册的数据加载方式，write-through模式使用
+     */
+    private static class Loader {
+        final Function<Long, ?> dbFallback;
+        final Long time;
+        final TimeUnit unit;
+
+        Loader(Function<Long, ?> dbFallback, Long time, TimeUnit unit) {
+            this.dbFallback = dbFallback;
+            this.time = time;
+            this.unit = unit;
+        }
+    }
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheOutboxMapper cacheOutboxMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final Map<String, Loader> loaders = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService delayExecutor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cache-double-delete-", true));
+
+    @Value("${hmdp.cache.consistency.mode:write-through}")
+    private String mode;
+    @Value("${hmdp.cache.consistency.double-delete-delay-millis:500}")
+    private long doubleDeleteDelayMillis;
+    @Value("${hmdp.cache.consistency.outbox.enabled:false}")
+    private boolean outboxEnabled;
+    @Value("${hmdp.cache.consistency.outbox.batch-size:200}")
+    private int outboxBatchSize;
+
+    /**
+     * 注册key前缀对应的数据库查询方式，未注册的前缀在write-through模式下退化为删除缓存
+     */
+    public void register(String keyPrefix, Function<Long, ?> dbFallback, Long time, TimeUnit unit) {
+        loaders.put(keyPrefix, new Loader(dbFallback, time, unit));
+    }
+
+    /**
+     * 数据库数据已更新（在事务中调用），事务提交后按配置的模式处理缓存
+     *
+     * @param keyPrefix Redis缓存key前缀
+     * @param id        变更数据的id
+     */
+    public void afterUpdate(String keyPrefix, Long id) {
+        if (outboxEnabled) {
+            cacheOutboxMapper.insert(new CacheOutbox().setKeyPrefix(keyPrefix).setBizId(id)
+                    .setCreateTime(LocalDateTime.now()));
+        }
+        afterCommit(() -> {
+            try {
+                apply(keyPrefix, id);
+            } catch (Exception e) {
+                log.error("缓存更新失败 key:{}", keyPrefix + id, e);
+            }
+        });
+    }
+
+    /**
+     * 当前存在事务时在提交后执行，回滚则不执行；没有事务时立即执行
+     */
+    public void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void apply(String keyPrefix, Long id) {
+        String key = keyPrefix + id;
+        if (MODE_WRITE_THROUGH.equals(mode)) {
+            Loader loader = loaders.get(keyPrefix);
+            if (loader != null) {
+                cacheClient.refresh(keyPrefix, id, loader.dbFallback.apply(id), loader.time, loader.unit);
+                return;
+            }
+        }
+        cacheClient.delete(key);
+        if (MODE_DOUBLE_DELETE.equals(mode)) {
+            delayExecutor.schedule(() -> {
+                try {
+                    cacheClient.delete(key);
+                } catch (Exception e) {
+                    log.error("延迟删除缓存失败 key:{}", key, e);
+                }
+            }, doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 批量读取变更记录并处理缓存，处理成功后删除记录，失败的记录下次继续处理
+     */
+    @Scheduled(fixedDelayString = "${hmdp.cache.consistency.outbox.poll-millis:1000}")
+    public void pollOutbox() {
+        if (!outboxEnabled) {
+            return;
+        }
+        //多个节点同时运行时，只有获取到锁的节点读取变更记录；处理超过锁的有效时间时只释放自己的锁
+        ILock lock = new SimpleRedisLock(LOCK_CACHE_OUTBOX_NAME, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_CACHE_OUTBOX_TTL)) {
+            return;
+        }
+        try {
+            List<CacheOutbox> records;
+            do {
+                records = cacheOutboxMapper.selectList(new QueryWrapper<CacheOutbox>()
+                        .orderByAsc("id")
+                        .last("limit " + outboxBatchSize));
+                if (records.isEmpty()) {
+                    return;
+                }
+                //同一批中重复变更的数据只处理一次
+                Set<String> handled = new LinkedHashSet<>();
+                List<Long> done = new ArrayList<>(records.size());
+                for (CacheOutbox record : records) {
+                    if (handled.add(record.getKeyPrefix() + record.getBizId())) {
+                        try {
+                            apply(record.getKeyPrefix(), record.getBizId());
+                        } catch (Exception e) {
+                            log.error("处理缓存变更记录失败 id:{}", record.getId(), e);
+                            break;
+                        }
+                    }
+                    done.add(record.getId());
+                }
+                if (done.isEmpty()) {
+                    return;
+                }
+                cacheOutboxMapper.deleteBatchIds(done);
+                if (done.size() < records.size()) {
+                    return;
+                }
+            } while (records.size() == outboxBatchSize);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        delayExecutor.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存指标统计，按key前缀分别记录命中、空值命中、未命中、数据库加载耗时、重建次数、锁竞争以及查询耗时分布
+ */
+@Component
+public class CacheMetrics {
+
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+
+    public Namespace of(String keyPrefix) {
+        Namespace namespace = namespaces.get(keyPrefix);
+        if (namespace == null) {
+            namespace = namespaces.computeIfAbsent(keyPrefix, k -> new Namespace());
+        }
+        return namespace;
+    }
+
+    /**
+     * 所有key前缀的指标快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        namespaces.forEach((prefix, namespace) -> result.put(prefix, namespace.snapshot()));
+        return result;
+    }
+
+    /**
+     * 单个key前缀的指标
+     */
+    public static class Namespace {
+        public final LongAdder localHit = new LongAdder();
+        public final LongAdder hit = new LongAdder();
+        public final LongAdder nullHit = new LongAdder();
+        public final LongAdder stale = new LongAdder();
+        public final LongAdder miss = new LongAdder();
+        public final LongAdder rebuild = new LongAdder();
+        public final LongAdder lockFailure = new LongAdder();
+        /**
+         * 查询耗时（包括数据库加载）
+         */
+        public final LatencyHistogram readLatency = new LatencyHistogram();
+        /**
+         * 数据库加载耗时
+         */
+        public final LatencyHistogram dbLoadLatency = new LatencyHistogram();
+
+        Map<String, Object> snapshot() {
+            long localHits = localHit.sum();
+            long hits = hit.sum();
+            long nullHits = nullHit.sum();
+            long misses = miss.sum();
+            long total = localHits + hits + nullHits + misses;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("localHit", localHits);
+            map.put("hit", hits);
+            map.put("nullHit", nullHits);
+            map.put("stale", stale.sum());
+            map.put("miss", misses);
+            map.put("hitRatio", total == 0 ? 0 : (double) (localHits + hits + nullHits) / total);
+            map.put("rebuild", rebuild.sum());
+            map.put("lockFailure", lockFailure.sum());
+            map.put("readLatency", readLatency.snapshot());
+            map.put("dbLoadLatency", dbLoadLatency.snapshot());
+            return map;
+        }
+    }
+
+    /**
+     * 固定区间的耗时分布，单位微秒
+     */
+    public static class LatencyHistogram {
+        private static final long[] BOUNDS_MICROS = {
+                50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+
+        public void record(long nanos) {
+            long micros = nanos / 1000;
+            int index = 0;
+            while (index < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[index]) {
+                index++;
+            }
+            counts.incrementAndGet(index);
+            count.increment();
+            totalMicros.add(micros);
+        }
+
+        /**
+         * 快照，分位数取所在区间的上限
+         */
+        Map<String, Object> snapshot() {
+            long n = count.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", n);
+            map.put("avgMicros", n == 0 ? 0 : totalMicros.sum() / n);
+            map.put("p50Micros", percentile(n, 0.50));
+            map.put("p95Micros", percentile(n, 0.95));
+            map.put("p99Micros", percentile(n, 0.99));
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length(); i++) {
+                buckets.put(i < BOUNDS_MICROS.length ? "le" + BOUNDS_MICROS[i] : "inf", counts.get(i));
+            }
+            map.put("buckets", buckets);
+            return map;
+        }
+
+        private long percentile(long n, double p) {
+            if (n == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(n * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= threshold) {
+                    return i < BOUNDS_MICROS.length ? BOUNDS_MICROS[i] : -1;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 缓存的提前刷新（refresh-ahead），用于逻辑过期缓存和设置了过期时间的缓存（queryWithPassThrough）
+ * 1. 记录最近被访问的key及其逻辑过期时间，后台定时扫描，在过期前 ahead-seconds 秒内提前重建
+ * 2. 已过期的key由查询线程提交重建，查询线程直接返回旧数据（stale-while-revalidate）
+ * 3. 重建线程池队列有界，同一个key同一时间只会有一个重建任务
+ * 4. 未执行重建（其他节点持有锁或已经完成重建）时，从Redis读取当前的过期时间，避免重复提交；key已经不存在时不再跟踪
+ */
+@Slf4j
+@Component
+public class CacheRefresher {
+
+    /**
+     * 被访问的key，超过访问窗口没有再被访问则不再提前刷新
+     */
+    private static class Entry {
+        volatile long lastAccessMillis;
+        volatile long expireMillis;
+        volatile Supplier<Long> reload;
+        volatile Supplier<Long> expiry;
+    }
+
+    private final Map<String, Entry> tracked = new ConcurrentHashMap<>();
+    /**
+     * 已提交还未执行完成的重建key，用于去重
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor rebuildExecutor;
+    private final ScheduledExecutorService scanExecutor;
+    private final long aheadMillis;
+    private final long accessWindowMillis;
+    private final int maxTrackedKeys;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder staleCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public CacheRefresher(@Value("${hmdp.cache.refresh.threads:10}") int threads,
+                          @Value("${hmdp.cache.refresh.queue-capacity:1000}") int queueCapacity,
+                          @Value("${hmdp.cache.refresh.ahead-seconds:60}") long aheadSeconds,
+                          @Value("${hmdp.cache.refresh.access-window-seconds:300}") long accessWindowSeconds,
+                          @Value("${hmdp.cache.refresh.scan-interval-millis:1000}") long scanIntervalMillis,
+                          @Value("${hmdp.cache.refresh.max-tracked-keys:10000}") int maxTrackedKeys) {
+        this.aheadMillis = TimeUnit.SECONDS.toMillis(aheadSeconds);
+        this.accessWindowMillis = TimeUnit.SECONDS.toMillis(accessWindowSeconds);
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.rebuildExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("cache-rebuild-", true),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.scanExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cache-refresh-scan-", true));
+        this.scanExecutor.scheduleWithFixedDelay(this::scan, scanIntervalMillis, scanIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次未过期的访问
+     *
+     * @param key          缓存key
+     * @param expireMillis 当前逻辑过期时间
+     * @param reload       重建函数，返回新的逻辑过期时间，未执行重建（未获取到锁或已经被其他节点重建）返回null
+     * @param expiry       读取Redis中当前的逻辑过期时间，不存在返回null
+     */
+    public void recordHit(String key, long expireMillis, Supplier<Long> reload, Supplier<Long> expiry) {
+        hitCount.increment();
+        track(key, expireMillis, reload, expiry);
+    }
+
+    /**
+     * 记录一次过期数据的访问，并提交重建
+     */
+    public void recordStale(String key, long expireMillis, Supplier<Long> reload, Supplier<Long> expiry) {
+        staleCount.increment();
+        track(key, expireMillis, reload, expiry);
+        submit(key, reload, expiry);
+    }
+
+    /**
+     * 记录一次本地缓存命中，只更新已经跟踪的key的访问时间（本地缓存命中时不知道Redis中的过期时间）
+     */
+    public void touch(String key) {
+        Entry entry = tracked.get(key);
+        if (entry != null) {
+            entry.lastAccessMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void track(String key, long expireMillis, Supplier<Long> reload, Supplier<Long> expiry) {
+        Entry entry = tracked.get(key);
+        if (entry == null) {
+            if (tracked.size() >= maxTrackedKeys) {
+                return;
+            }
+            entry = tracked.computeIfAbsent(key, k -> new Entry());
+        }
+        entry.lastAccessMillis = System.currentTimeMillis();
+        entry.expireMillis = expireMillis;
+        entry.reload = reload;
+        entry.expiry = expiry;
+    }
+
+    /**
+     * 提前刷新的时间范围（毫秒），逻辑过期时间超出该范围的key不需要重建
+     */
+    public long getAheadMillis() {
+        return aheadMillis;
+    }
+
+    /**
+     * 提交重建任务，同一key已有任务在排队或执行时忽略
+     */
+    private void submit(String key, Supplier<Long> reload, Supplier<Long> expiry) {
+        if (!pending.add(key)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    Long expireMillis = reload.get();
+                    if (expireMillis != null) {
+                        refreshCount.increment();
+                    } else {
+                        //其他节点正在或已经完成重建，记录Redis中的过期时间，已经更新时不再重复提交
+                        expireMillis = expiry.get();
+                        if (expireMillis == null) {
+                            tracked.remove(key);
+                        }
+                    }
+                    Entry entry = tracked.get(key);
+                    if (entry != null && expireMillis != null) {
+                        entry.expireMillis = expireMillis;
+                    }
+                } catch (Exception e) {
+                    failureCount.increment();
+                    log.error("缓存重建失败,key:{}", key, e);
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //队列已满，放弃本次重建，下次访问或扫描时再次提交
+            pending.remove(key);
+            rejectedCount.increment();
+        }
+    }
+
+    /**
+     * 扫描最近被访问的key，即将过期的提前重建，长时间未访问的不再跟踪
+     */
+    private void scan() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Entry>> iterator = tracked.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> e = iterator.next();
+                Entry entry = e.getValue();
+                if (now - entry.lastAccessMillis > accessWindowMillis) {
+                    iterator.remove();
+                } else if (entry.expireMillis - now <= aheadMillis) {
+                    submit(e.getKey(), entry.reload, entry.expiry);
+                }
+            }
+        } catch (Exception e) {
+            log.error("缓存提前刷新扫描异常", e);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public int getQueueSize() {
+        return rebuildExecutor.getQueue().size();
+    }
+
+    public int getTrackedKeyCount() {
+        return tracked.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanExecutor.shutdownNow();
+        rebuildExecutor.shutdown();
+    }
+}
@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存过期时间策略：在基础过期时间上增加随机时长，避免大量key在同一时刻过期（缓存雪崩）
+ */
+public class CacheTtlPolicy {
+
+    private final long baseSeconds;
+    /**
+     * 随机增加的最大比例，例如0.2表示在基础时间上随机增加0~20%
+     */
+    private final double jitterRatio;
+
+    private CacheTtlPolicy(long baseSeconds, double jitterRatio) {
+        this.baseSeconds = baseSeconds;
+        this.jitterRatio = jitterRatio;
+    }
+
+    public static CacheTtlPolicy of(long time, TimeUnit unit, double jitterRatio) {
+        return new CacheTtlPolicy(unit.toSeconds(time), jitterRatio);
+    }
+
+    /**
+     * 生成本次写入使用的过期时间（秒）
+     */
+    public long nextTtlSeconds() {
+        return withJitter(baseSeconds, jitterRatio);
+    }
+
+    public static long withJitter(long seconds, double jitterRatio) {
+        long jitter = (long) (seconds * jitterRatio);
+        if (jitter <= 0) {
+            return seconds;
+        }
+        return seconds + ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
+
+    public long getBaseSeconds() {
+        return baseSeconds;
+    }
+
+    public double getJitterRatio() {
+        return jitterRatio;
+    }
+}
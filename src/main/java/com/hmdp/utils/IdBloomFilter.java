@@ -0,0 +1,251 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于布隆过滤器解决缓存穿透：不可能存在的id直接拒绝，不访问Redis缓存和数据库
+ * 本地保存一份位数组，Redis中保存一份相同结构的BitMap：
+ * 1. 启动时从数据库分批读取所有id构建，定时任务定期重建
+ * 2. 新增数据时同时写入本地、Redis，并广播给其他节点写入本地
+ * 3. 本地判断不存在时，若id大于构建时的最大id（可能是其他节点新增但广播丢失），再查询一次Redis中的BitMap
+ */
+@Slf4j
+@Component
+public class IdBloomFilter implements MessageListener {
+
+    public static final String SHOP = "shop";
+    public static final String USER = "user";
+    public static final String BLOG = "blog";
+
+    /**
+     * 构建时每次从数据库读取的id数量
+     */
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    @Resource
+    StringRedisTemplate stringRedisTemplate;
+    @Resource
+    ShopMapper shopMapper;
+    @Resource
+    UserMapper userMapper;
+    @Resource
+    BlogMapper blogMapper;
+
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    private final Map<String, Filter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * 单个布隆过滤器，未构建完成前所有id都视为可能存在
+     */
+    private static class Filter {
+        volatile LocalBloomFilter bloomFilter;
+        volatile long maxId;
+    }
+
+    /**
+     * 项目启动完成后构建布隆过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        rebuildAll();
+    }
+
+    /**
+     * 定时重建，清除已删除数据占用的位并修正广播丢失的数据
+     */
+    @Scheduled(cron = "${hmdp.bloom.rebuild-cron:0 0 4 * * ?}")
+    public void rebuildAll() {
+        rebuild(SHOP, shopMapper);
+        rebuild(USER, userMapper);
+        rebuild(BLOG, blogMapper);
+    }
+
+    /**
+     * 判断id是否可能存在，返回false时数据一定不存在
+     */
+    public boolean mightContain(String name, Long id) {
+        if (id == null) {
+            return false;
+        }
+        Filter filter = filters.get(name);
+        if (filter == null) {
+            //还未构建完成，不做拦截
+            return true;
+        }
+        if (filter.bloomFilter.mightContain(id)) {
+            return true;
+        }
+        if (id <= filter.maxId) {
+            return false;
+        }
+        //构建之后新增的id，本地可能漏收广播，以Redis为准
+        boolean exists = mightContainInRedis(BLOOM_FILTER_KEY + name, filter.bloomFilter, id);
+        if (exists) {
+            filter.bloomFilter.put(id);
+        }
+        return exists;
+    }
+
+    /**
+     * 新增数据后调用，写入本地和Redis，并通知其他节点
+     */
+    public void add(String name, Long id) {
+        Filter filter = filters.get(name);
+        if (filter == null || id == null) {
+            return;
+        }
+        filter.bloomFilter.put(id);
+        setBits(BLOOM_FILTER_KEY + name, filter.bloomFilter, Collections.singletonList(id));
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, name + ":" + id);
+    }
+
+    /**
+     * 接收其他节点新增的id
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        if (index < 0) {
+            return;
+        }
+        Filter filter = filters.get(body.substring(0, index));
+        if (filter != null) {
+            filter.bloomFilter.put(Long.parseLong(body.substring(index + 1)));
+        }
+    }
+
+    /**
+     * 从数据库按id分批读取（基于上一批最大id翻页，避免深分页），构建新的过滤器后整体替换
+     */
+    private <T> void rebuild(String name, BaseMapper<T> mapper) {
+        long begin = System.currentTimeMillis();
+        LocalBloomFilter bloomFilter = new LocalBloomFilter(expectedInsertions, fpp);
+        String key = BLOOM_FILTER_KEY + name;
+        String tmpKey = key + ":tmp";
+        //Redis中的BitMap只需要一个节点重建；重建超过锁的有效时间时只释放自己的锁
+        ILock lock = new SimpleRedisLock(LOCK_BLOOM_NAME + name, stringRedisTemplate);
+        boolean rebuildRedis = lock.tryLock(TimeUnit.MINUTES.toSeconds(LOCK_BLOOM_TTL));
+        try {
+            if (rebuildRedis) {
+                stringRedisTemplate.delete(tmpKey);
+            }
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                List<Long> ids = selectIds(mapper, lastId);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                ids.forEach(bloomFilter::put);
+                if (rebuildRedis) {
+                    setBits(tmpKey, bloomFilter, ids);
+                }
+                lastId = ids.get(ids.size() - 1);
+                count += ids.size();
+            }
+            if (rebuildRedis) {
+                if (count > 0) {
+                    stringRedisTemplate.rename(tmpKey, key);
+                } else {
+                    stringRedisTemplate.delete(key);
+                }
+            }
+            Filter filter = filters.computeIfAbsent(name, n -> new Filter());
+            filter.bloomFilter = bloomFilter;
+            filter.maxId = lastId;
+            //补充构建期间新增的数据（这些数据可能写入了被替换掉的旧过滤器）
+            List<Long> tail = selectIds(mapper, lastId);
+            if (!tail.isEmpty()) {
+                tail.forEach(bloomFilter::put);
+                setBits(key, bloomFilter, tail);
+            }
+            log.debug("布隆过滤器{}构建完成,数量:{},位数:{},哈希函数个数:{},耗时:{}ms", name, count,
+                    bloomFilter.getBitSize(), bloomFilter.getHashCount(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("布隆过滤器{}构建失败", name, e);
+        } finally {
+            if (rebuildRedis) {
+                lock.unLock();
+            }
+        }
+    }
+
+    /**
+     * 查询大于lastId的一批id
+     */
+    private <T> List<Long> selectIds(BaseMapper<T> mapper, long lastId) {
+        List<Object> objs = mapper.selectObjs(new QueryWrapper<T>()
+                .select("id").gt("id", lastId).orderByAsc("id").last("LIMIT " + SEED_BATCH_SIZE));
+        List<Long> ids = new ArrayList<>(objs == null ? 0 : objs.size());
+        if (objs != null) {
+            for (Object obj : objs) {
+                ids.add(((Number) obj).longValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 使用管道批量写入id对应的位
+     */
+    private void setBits(String key, LocalBloomFilter bloomFilter, List<Long> ids) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                for (long index : bloomFilter.indexes(id)) {
+                    connection.setBit(rawKey, index, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 使用管道一次查询id对应的所有位
+     */
+    private boolean mightContainInRedis(String key, LocalBloomFilter bloomFilter, long id) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long index : bloomFilter.indexes(id)) {
+                connection.getBit(rawKey, index);
+            }
+            return null;
+        });
+        for (Object bit : bits) {
+            if (!Boolean.TRUE.equals(bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.ConvertException;
+import cn.hutool.json.JSONException;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 基于Hutool JSON的编解码，与原先直接存储JSON字符串的格式一致
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+        } catch (JSONException | ConvertException e) {
+            //不是JSON或字段类型与当前类不匹配（例如数据结构变化前写入的缓存），按未命中处理
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        return encode(redisData);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(byte[] bytes, Class<?> type) {
+        RedisData redisData = decode(bytes, RedisData.class);
+        if (redisData == null || redisData.getExpireTime() == null || !(redisData.getData() instanceof JSONObject)) {
+            return null;
+        }
+        try {
+            redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        } catch (JSONException | ConvertException e) {
+            return null;
+        }
+        return redisData;
+    }
+}
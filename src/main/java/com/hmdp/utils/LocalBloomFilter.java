@@ -0,0 +1,98 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于内存位数组的布隆过滤器，元素为Long类型的id
+ * 位下标的计算方式是公开的，Redis中的BitMap副本使用完全相同的下标，两者可以互相校验
+ */
+public class LocalBloomFilter {
+
+    private final AtomicLongArray bits;
+    /**
+     * 位数组长度
+     */
+    private final long bitSize;
+    /**
+     * 哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        this.bitSize = optimalBitSize(expectedInsertions, fpp);
+        this.hashCount = optimalHashCount(expectedInsertions, bitSize);
+        this.bits = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+    }
+
+    /**
+     * 根据预计数量和误判率计算位数组长度 m = -n*ln(p)/(ln2)^2
+     */
+    public static long optimalBitSize(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        //Redis BitMap最大支持2^32位
+        return Math.max(64, Math.min(m, 1L << 32));
+    }
+
+    /**
+     * 计算哈希函数个数 k = m/n*ln2
+     */
+    public static int optimalHashCount(long expectedInsertions, long bitSize) {
+        long n = Math.max(1, expectedInsertions);
+        return Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    /**
+     * 计算id对应的所有位下标（双重哈希 h1 + i*h2）
+     */
+    public long[] indexes(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        long[] result = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            long combined = h1 + i * h2;
+            result[i] = (combined & Long.MAX_VALUE) % bitSize;
+        }
+        return result;
+    }
+
+    public void put(long id) {
+        for (long index : indexes(id)) {
+            long mask = 1L << (index & 63);
+            bits.accumulateAndGet((int) (index >>> 6), mask, (a, b) -> a | b);
+        }
+    }
+
+    public boolean mightContain(long id) {
+        for (long index : indexes(id)) {
+            if ((bits.get((int) (index >>> 6)) & (1L << (index & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * MurmurHash3 的 fmix64 混淆函数
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 本地缓存（一级缓存），位于Redis之前
+ * 按容量和写入时间淘汰，数据更新时通过Redis发布订阅通知所有节点删除本地副本
+ * 即使广播消息丢失，本地数据最多也只会存活 expire-seconds 秒
+ * 注意：缓存中的对象为多个请求共享，调用方不要修改返回的对象
+ */
+@Component
+@Slf4j
+public class LocalCache implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, Object> cache;
+
+    public LocalCache(StringRedisTemplate stringRedisTemplate,
+                      @Value("${hmdp.cache.local.maximum-size:10000}") long maximumSize,
+                      @Value("${hmdp.cache.local.expire-seconds:5}") long expireSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 查询本地缓存，未命中或类型不符时返回null
+     *
+     * @param key  缓存key
+     * @param type 实体类型
+     */
+    public <T> T get(String key, Class<T> type) {
+        Object value = cache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void put(String key, Object value) {
+        if (value != null) {
+            cache.put(key, value);
+        }
+    }
+
+    /**
+     * 只删除当前节点的本地缓存
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * 删除本地缓存，同时广播给其他节点删除
+     */
+    public void publishInvalidate(String key) {
+        cache.invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 接收其他节点广播的失效消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到本地缓存失效消息,{}", key);
+        cache.invalidate(key);
+    }
+}
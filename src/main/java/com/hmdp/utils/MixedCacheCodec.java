@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * 兼容新旧两种格式的编解码：
+ * 写入时优先使用二进制格式（配置为json或类型不支持时使用JSON），
+ * 读取时根据首字节判断格式，切换过程中Redis中已有的JSON数据仍然可以正常读取
+ */
+public class MixedCacheCodec implements CacheCodec {
+
+    private final BinaryCacheCodec binaryCodec = new BinaryCacheCodec();
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+    private final boolean writeBinary;
+
+    public MixedCacheCodec(boolean writeBinary) {
+        this.writeBinary = writeBinary;
+    }
+
+    private CacheCodec writerFor(Object value) {
+        return writeBinary && binaryCodec.supports(value.getClass()) ? binaryCodec : jsonCodec;
+    }
+
+    private CacheCodec readerFor(byte[] bytes) {
+        return BinaryCacheCodec.isBinary(bytes) ? binaryCodec : jsonCodec;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return writerFor(value).encode(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return readerFor(bytes).decode(bytes, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, LocalDateTime expireTime) {
+        return writerFor(value).encodeWithExpire(value, expireTime);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(byte[] bytes, Class<?> type) {
+        return readerFor(bytes).decodeWithExpire(bytes, type);
+    }
+}
@@ -17,15 +17,137 @@ public class RedisConstants {
      * 商店缓存时间
      */
     public static final Long CACHE_SHOP_TTL = 30L;
+    /**
+     * 商店缓存过期时间随机增加的最大比例
+     */
+    public static final Double CACHE_SHOP_TTL_JITTER = 0.2;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shopType:";
+    /**
+     * 用户基本信息（UserDTO）缓存
+     */
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final Double CACHE_USER_TTL_JITTER = 0.2;
+    /**
+     * 本地缓存失效广播频道
+     */
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    /**
+     * 布隆过滤器BitMap及新增id广播频道
+     */
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+    /**
+     * 布隆过滤器重建锁名称（SimpleRedisLock，key为 lock:bloom:{name}，分钟）
+     */
+    public static final String LOCK_BLOOM_NAME = "bloom:";
+    public static final Long LOCK_BLOOM_TTL = 10L;
+
+    /**
+     * 缓存变更记录表的处理锁名称（SimpleRedisLock，key为 lock:cache:outbox，秒），同一时间只有一个节点读取变更记录
+     */
+    public static final String LOCK_CACHE_OUTBOX_NAME = "cache:outbox";
+    public static final Long LOCK_CACHE_OUTBOX_TTL = 30L;
+    /**
+     * 缓存过期前提前刷新的互斥锁，同一个key同一时间只有一个节点查询数据库
+     */
+    public static final String LOCK_CACHE_REFRESH_KEY = "lock:cache:refresh:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    /**
+     * 秒杀时间窗口，值为 开始时间:结束时间（秒）
+     */
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    /**
+     * 秒杀券已预热标记，过期时间与时间窗口相同
+     */
+    public static final String SECKILL_PREHEAT_KEY = "seckill:preheat:";
+    /**
+     * 秒杀券预热和结束后对账的处理锁名称（SimpleRedisLock，key为 lock:seckill:schedule，秒）
+     */
+    public static final String LOCK_SECKILL_SCHEDULE_NAME = "seckill:schedule";
+    public static final Long LOCK_SECKILL_SCHEDULE_TTL = 60L;
+    /**
+     * 单个秒杀券预热的锁名称（SimpleRedisLock，key为 lock:seckill:preheat:{voucherId}，秒），
+     * 定时预热和下单时发现没有库存的立即预热互斥，避免重复写入库存
+     */
+    public static final String LOCK_SECKILL_PREHEAT_NAME = "seckill:preheat:";
+    public static final Long LOCK_SECKILL_PREHEAT_TTL = 10L;
+    /**
+     * 店铺优惠券列表缓存（分钟）
+     */
+    public static final String CACHE_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final Long CACHE_VOUCHER_TTL = 30L;
+    /**
+     * 秒杀券库存分片数量
+     */
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    /**
+     * 秒杀券分片数量变更广播频道
+     */
+    public static final String SECKILL_SHARDS_CHANNEL = "seckill:shards:changed";
+    /**
+     * 秒杀订单消息队列、消费者组以及多次处理失败的死信队列
+     */
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DEAD_LETTER_STREAM = "stream.orders.dlq";
+    /**
+     * 库存分片秒杀券的分片订单消息队列集合，订单消费者据此发现 stream.orders:{voucherId:shard}
+     */
+    public static final String SECKILL_ORDER_STREAMS_KEY = "seckill:streams";
+    /**
+     * 秒杀券售罄标记广播频道
+     */
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    /**
+     * 秒杀下单全局限流令牌桶
+     */
+    public static final String SECKILL_LIMIT_KEY = "limit:seckill:";
+    /**
+     * 秒杀订单处理状态（分钟）
+     */
+    public static final String SECKILL_ORDER_STATE_KEY = "seckill:state:";
+    public static final Long SECKILL_ORDER_STATE_TTL = 30L;
+    /**
+     * 秒杀请求令牌（幂等），hash结构 field为请求令牌，value为处理结果（小时）
+     */
+    public static final String SECKILL_TOKEN_KEY = "seckill:token:";
+    public static final Long SECKILL_TOKEN_TTL = 24L;
+    /**
+     * 雪花算法workerId租约
+     */
+    public static final String ID_WORKER_KEY = "id:worker:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    /**
+     * 店铺坐标变更广播频道，同步各节点的进程内坐标索引
+     */
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:changed";
+    /**
+     * 店铺名称变更广播频道，同步各节点的进程内名称索引
+     */
+    public static final String SHOP_NAME_CHANNEL = "shop:name:changed";
+    /**
+     * 店铺变更广播频道，同步各节点的进程内筛选目录
+     */
+    public static final String SHOP_CATALOG_CHANNEL = "shop:catalog:changed";
+    /**
+     * 店铺类型列表排序（小时），key为 shop:rank:{typeId}:排序，同一类型的各排序在同一个slot
+     */
+    public static final String SHOP_RANK_KEY = "shop:rank:";
+    public static final Long SHOP_RANK_TTL = 24L;
+    /**
+     * 店铺类型列表排序构建锁名称（SimpleRedisLock，key为 lock:shop:rank:{typeId}，秒）
+     */
+    public static final String LOCK_SHOP_RANK_NAME = "shop:rank:";
+    public static final Long LOCK_SHOP_RANK_TTL = 10L;
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -1,18 +1,40 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 全局唯一id：31位时间戳（秒） + 32位序列号，序列号按天在Redis中自增
+ * hmdp.id.mode：
+ * 1. redis：每个id执行一次 INCR
+ * 2. segment：每个节点通过一次 INCRBY 预留一段序列号，在本地无锁分配，当前号段使用到80%时后台预取下一段（双缓冲）
+ * 号段按日期申请，日期变化后丢弃剩余序列号，保证与原有方式一样全局唯一；id高位仍为生成时的时间戳，按时间递增
+ * 3. snowflake：生成id不访问Redis，见 SnowflakeIdWorker
+ */
+@Slf4j
 @Component
 public class RedisIdWorker {
 
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    SnowflakeIdWorker snowflakeIdWorker;
     /**
      * 开始时间戳
      */
@@ -22,23 +44,146 @@ public class RedisIdWorker {
      */
     public static final int COUNT_BITS = 32;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    @Value("${hmdp.id.mode:redis}")
+    private String mode;
+    @Value("${hmdp.id.segment-step:1000}")
+    private long segmentStep;
+
+    /**
+     * 号段：[cursor, end) 范围内的序列号，属于某一天
+     */
+    private static class Segment {
+        final long day;
+        final AtomicLong cursor;
+        final long end;
+        final long prefetchAt;
+
+        Segment(long day, long start, long end) {
+            this.day = day;
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = start + (end - start) * 8 / 10;
+        }
+    }
+
+    /**
+     * 每个key前缀的当前号段和预取的下一个号段
+     */
+    private static class SegmentBuffer {
+        volatile Segment current;
+        volatile Segment next;
+        final AtomicBoolean loading = new AtomicBoolean(false);
+    }
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("id-segment-prefetch-", true));
+
     /**
      * @param keyPrefix 缓存key前缀
      */
     public Long nextId(String keyPrefix) {
+        if ("snowflake".equals(mode)) {
+            return snowflakeIdWorker.nextId();
+        }
         // 1  生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timeStamp = nowSecond - BEGIN_TIMESTAMP;
 
-        //2 生成序列号  incr命令使得key自增
-        //获取当前日期
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //获取Redis自增长id
-        long count = stringRedisTemplate.opsForValue().increment("icr" + "" + keyPrefix + "" + date);
+        //2 生成序列号
+        long count = "segment".equals(mode)
+                ? nextCountFromSegment(keyPrefix, Math.floorDiv(nowSecond, SECONDS_PER_DAY))
+                : nextCountFromRedis(keyPrefix, now.toLocalDate());
 
         //3 拼接返回  <<  左移位运算
         return timeStamp << COUNT_BITS | count;
     }
 
+    /**
+     * incr命令使得key自增
+     */
+    private long nextCountFromRedis(String keyPrefix, LocalDate date) {
+        //获取Redis自增长id
+        return stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, date));
+    }
+
+    private static String counterKey(String keyPrefix, LocalDate date) {
+        return "icr" + keyPrefix + date.format(DATE_FORMATTER);
+    }
+
+    /**
+     * 从本地号段分配序列号，号段用完或日期变化时切换到预取的号段，没有预取号段时同步申请
+     */
+    private long nextCountFromSegment(String keyPrefix, long day) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, k -> new SegmentBuffer());
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment != null && segment.day == day) {
+                long count = segment.cursor.getAndIncrement();
+                if (count < segment.end) {
+                    if (count == segment.prefetchAt) {
+                        prefetch(keyPrefix, buffer, day);
+                    }
+                    return count;
+                }
+            }
+            switchSegment(keyPrefix, buffer, segment, day);
+        }
+    }
+
+    private void switchSegment(String keyPrefix, SegmentBuffer buffer, Segment exhausted, long day) {
+        synchronized (buffer) {
+            if (buffer.current != exhausted) {
+                //其他线程已经切换
+                return;
+            }
+            Segment next = buffer.next;
+            buffer.next = null;
+            buffer.current = next != null && next.day == day ? next : allocate(keyPrefix, day);
+        }
+    }
+
+    private void prefetch(String keyPrefix, SegmentBuffer buffer, long day) {
+        if (buffer.next != null || !buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    Segment segment = allocate(keyPrefix, day);
+                    synchronized (buffer) {
+                        if (buffer.next == null) {
+                            buffer.next = segment;
+                        }
+                    }
+                } catch (Exception e) {
+                    //预取失败时，号段用完后同步申请
+                    log.error("预取id号段失败 keyPrefix:{}", keyPrefix, e);
+                } finally {
+                    buffer.loading.set(false);
+                }
+            });
+        } catch (Exception e) {
+            buffer.loading.set(false);
+        }
+    }
+
+    /**
+     * INCRBY 预留 segmentStep 个序列号
+     */
+    private Segment allocate(String keyPrefix, long day) {
+        String key = counterKey(keyPrefix, LocalDate.ofEpochDay(day));
+        long end = stringRedisTemplate.opsForValue().increment(key, segmentStep);
+        return new Segment(day, end - segmentStep + 1, end + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdown();
+    }
+
 }
@@ -0,0 +1,520 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀订单消费者：读取Redis的Stream消息队列 stream.orders，以及库存分片秒杀券的分片消息队列 stream.orders:{voucherId:shard}，
+ * 异步将订单写入数据库
+ * 1. 每个节点启动 threads 个消费者，属于同一个消费者组 g1，消费者名称包含进程号和主机名，多节点之间不会重复
+ * 2. 每次 XREADGROUP 最多读取 batch-size 条消息，按用户id哈希分发到 lanes 个单线程处理通道，
+ * 同一用户的订单只会在同一个通道中顺序处理，不需要再使用用户级别的分布式锁；
+ * 每个通道将队列中的消息合并为最多 batch-size 条整批写入数据库后批量 ACK，队列满时消费者等待（背压）
+ * 3. 后台定时检查 pending-list，空闲超过 pending-idle-millis 的消息（消费者宕机或处理失败）通过 XCLAIM 转给本节点重新处理，
+ * 超过最大投递次数的消息转入死信队列，避免一直阻塞；本节点已读取、还在通道中等待处理的消息也在pending-list中，
+ * 每次检查时通过 XCLAIM ... JUSTID 转给原消费者以重置空闲时间（不增加投递次数），其他节点不会重复处理
+ * 4. 分片消息队列位于集群的不同slot，不能在一条命令中读取：后台定时从 seckill:streams 读取分片消息队列并创建消费者组，
+ * 每个分片消息队列按哈希分配给一个消费者，有分片消息队列的消费者逐个非阻塞读取，全部没有消息时短暂等待
+ * 5. 项目关闭时停止读取，等待通道中已读取的消息处理完成
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    /**
+     * 逐个读取多个消息队列，全部没有消息时的等待时间
+     */
+    private static final long SWEEP_IDLE_MILLIS = 50L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.seckill.consumer.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.seckill.consumer.threads:4}")
+    private int threads;
+    @Value("${hmdp.seckill.consumer.batch-size:100}")
+    private int batchSize;
+    @Value("${hmdp.seckill.consumer.block-millis:2000}")
+    private long blockMillis;
+    @Value("${hmdp.seckill.consumer.pending-idle-millis:30000}")
+    private long pendingIdleMillis;
+    @Value("${hmdp.seckill.consumer.recover-interval-millis:5000}")
+    private long recoverIntervalMillis;
+    @Value("${hmdp.seckill.consumer.max-deliveries:5}")
+    private int maxDeliveries;
+    @Value("${hmdp.seckill.consumer.lanes:8}")
+    private int laneCount;
+    @Value("${hmdp.seckill.consumer.lane-capacity:1000}")
+    private int laneCapacity;
+
+    /**
+     * 已读取、等待写入数据库的订单消息
+     */
+    private static class OrderMessage {
+        final String stream;
+        final String consumer;
+        final RecordId recordId;
+        final VoucherOrder order;
+
+        OrderMessage(String stream, String consumer, RecordId recordId, VoucherOrder order) {
+            this.stream = stream;
+            this.consumer = consumer;
+            this.recordId = recordId;
+            this.order = order;
+        }
+    }
+
+    /**
+     * 单线程处理通道，负责一部分用户的订单
+     */
+    private class Lane implements Runnable {
+        final BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(laneCapacity);
+
+        @Override
+        public void run() {
+            List<OrderMessage> batch = new ArrayList<>(batchSize);
+            //停止后处理完队列中剩余的消息
+            while (running || !queue.isEmpty()) {
+                try {
+                    OrderMessage first = queue.poll(blockMillis, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    handle(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    //处理失败的消息留在pending-list中，由后台重新投递
+                    log.error("处理订单消息异常", e);
+                } finally {
+                    inFlight.removeAll(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private final String consumerPrefix = ManagementFactory.getRuntimeMXBean().getName() + "-";
+    private ExecutorService consumerExecutor;
+    private ExecutorService laneExecutor;
+    private Lane[] lanes;
+    private ScheduledExecutorService recoverExecutor;
+    private volatile boolean running;
+    /**
+     * 已读取、还没有处理完成的消息（在通道队列中或正在处理）
+     */
+    private final Set<OrderMessage> inFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * 分片消息队列，以及已经创建消费者组的分片消息队列
+     */
+    private volatile List<String> shardStreams = Collections.emptyList();
+    private final Set<String> groupCreated = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder handledCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder claimedCount = new LongAdder();
+    private final LongAdder deadLetterCount = new LongAdder();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        createGroup(SECKILL_ORDER_STREAM);
+        refreshStreams();
+        running = true;
+        lanes = new Lane[laneCount];
+        laneExecutor = Executors.newFixedThreadPool(laneCount, new NamedThreadFactory("seckill-order-lane-", false));
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+            laneExecutor.submit(lanes[i]);
+        }
+        consumerExecutor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("seckill-order-", false));
+        for (int i = 0; i < threads; i++) {
+            String consumerName = consumerPrefix + i;
+            int index = i;
+            consumerExecutor.submit(() -> consume(consumerName, index));
+        }
+        recoverExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("seckill-order-recover-", true));
+        recoverExecutor.scheduleWithFixedDelay(() -> {
+            refreshStreams();
+            keepInFlightAlive();
+            recoverPending();
+        }, recoverIntervalMillis, recoverIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 读取分片消息队列集合，为新的分片消息队列创建消费者组（从第一条消息开始读取，创建前写入的消息不会丢失）
+     */
+    private void refreshStreams() {
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(SECKILL_ORDER_STREAMS_KEY);
+            List<String> streams = members == null ? new ArrayList<>() : new ArrayList<>(members);
+            Collections.sort(streams);
+            for (String stream : streams) {
+                if (!groupCreated.contains(stream)) {
+                    createGroup(stream);
+                    groupCreated.add(stream);
+                }
+            }
+            groupCreated.retainAll(streams);
+            shardStreams = streams;
+        } catch (Exception e) {
+            log.error("读取分片订单消息队列异常", e);
+        }
+    }
+
+    /**
+     * XGROUP CREATE stream g1 0 MKSTREAM，消费者组已存在时忽略
+     */
+    private void createGroup(String stream) {
+        byte[] key = stream.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(key, SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private void consume(String consumerName, int index) {
+        Consumer consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        StreamReadOptions blocking = StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis));
+        StreamReadOptions nonBlocking = StreamReadOptions.empty().count(batchSize);
+        while (running) {
+            try {
+                List<String> streams = assignedStreams(index);
+                if (streams.size() == 1) {
+                    //XREADGROUP GROUP g1 consumerName COUNT batchSize BLOCK blockMillis STREAMS stream.orders >
+                    dispatch(consumerName, read(consumer, blocking, SECKILL_ORDER_STREAM));
+                    continue;
+                }
+                boolean empty = true;
+                for (String stream : streams) {
+                    List<MapRecord<String, Object, Object>> records = read(consumer, nonBlocking, stream);
+                    if (!records.isEmpty()) {
+                        empty = false;
+                        dispatch(consumerName, records);
+                    }
+                }
+                if (empty) {
+                    sleep(SWEEP_IDLE_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                //处理失败的消息留在pending-list中，由后台重新投递
+                log.error("读取订单消息异常", e);
+                sleep(blockMillis);
+            }
+        }
+    }
+
+    private List<MapRecord<String, Object, Object>> read(Consumer consumer, StreamReadOptions options, String stream) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .read(consumer, options, StreamOffset.create(stream, ReadOffset.lastConsumed()));
+        return records == null ? Collections.emptyList() : records;
+    }
+
+    /**
+     * 消费者读取的消息队列：所有消费者都读取 stream.orders，分片消息队列按哈希分配给其中一个消费者
+     */
+    private List<String> assignedStreams(int index) {
+        List<String> streams = new ArrayList<>();
+        streams.add(SECKILL_ORDER_STREAM);
+        for (String stream : shardStreams) {
+            if (Math.floorMod(stream.hashCode(), threads) == index) {
+                streams.add(stream);
+            }
+        }
+        return streams;
+    }
+
+    private List<String> allStreams() {
+        List<String> streams = new ArrayList<>(shardStreams.size() + 1);
+        streams.add(SECKILL_ORDER_STREAM);
+        streams.addAll(shardStreams);
+        return streams;
+    }
+
+    /**
+     * 按用户id哈希将消息分发到处理通道，通道队列已满时等待
+     */
+    private void dispatch(String consumerName, List<MapRecord<String, Object, Object>> records)
+            throws InterruptedException {
+        for (MapRecord<String, Object, Object> record : records) {
+            VoucherOrder order;
+            try {
+                order = toVoucherOrder(record);
+            } catch (Exception e) {
+                failedCount.increment();
+                log.error("解析订单消息异常 messageId:{}", record.getId(), e);
+                continue;
+            }
+            int lane = Math.floorMod(Long.hashCode(order.getUserId()), lanes.length);
+            OrderMessage message = new OrderMessage(record.getStream(), consumerName, record.getId(), order);
+            inFlight.add(message);
+            try {
+                lanes[lane].queue.put(message);
+            } catch (InterruptedException e) {
+                inFlight.remove(message);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 处理一批消息：整批写入数据库，成功的消息批量ACK，失败的消息留在pending-list中
+     */
+    private void handle(List<OrderMessage> messages) {
+        Map<Long, OrderMessage> succeeded = new HashMap<>(messages.size() * 2);
+        List<VoucherOrder> orders = new ArrayList<>(messages.size());
+        for (OrderMessage message : messages) {
+            orders.add(message.order);
+            succeeded.put(message.order.getId(), message);
+        }
+        List<VoucherOrder> failed = voucherOrderService.handleVoucherOrders(orders);
+        for (VoucherOrder order : failed) {
+            succeeded.remove(order.getId());
+        }
+        handledCount.add(succeeded.size());
+        failedCount.add(failed.size());
+        //一批消息可能来自多个消息队列，按消息队列分别ACK
+        Map<String, List<RecordId>> idsByStream = new HashMap<>();
+        for (OrderMessage message : succeeded.values()) {
+            idsByStream.computeIfAbsent(message.stream, k -> new ArrayList<>()).add(message.recordId);
+        }
+        idsByStream.forEach(this::acknowledge);
+    }
+
+    private void acknowledge(String stream, List<RecordId> ids) {
+        if (!ids.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP,
+                    ids.toArray(new RecordId[0]));
+        }
+    }
+
+    private static VoucherOrder toVoucherOrder(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> values = record.getValue();
+        return BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
+    }
+
+    /**
+     * 重新处理pending-list中长时间没有ACK的消息
+     * XPENDING 找出空闲时间超过阈值的消息，XCLAIM 转给本节点的恢复消费者后重新处理
+     */
+    private void recoverPending() {
+        for (String stream : allStreams()) {
+            recoverPending(stream);
+        }
+    }
+
+    /**
+     * 本节点还没有处理完成的消息，XCLAIM ... JUSTID 转给原消费者，重置空闲时间，避免被其他节点当作超时消息重新处理
+     */
+    private void keepInFlightAlive() {
+        Map<String, Map<String, List<RecordId>>> ids = new HashMap<>();
+        for (OrderMessage message : inFlight) {
+            ids.computeIfAbsent(message.stream, k -> new HashMap<>())
+                    .computeIfAbsent(message.consumer, k -> new ArrayList<>()).add(message.recordId);
+        }
+        ids.forEach((stream, byConsumer) -> byConsumer.forEach((consumer, recordIds) -> {
+            try {
+                byte[] key = stream.getBytes(StandardCharsets.UTF_8);
+                RedisStreamCommands.XClaimOptions options = RedisStreamCommands.XClaimOptions
+                        .minIdle(Duration.ZERO).ids(recordIds.toArray(new RecordId[0]));
+                stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                        connection.streamCommands().xClaimJustId(key, SECKILL_ORDER_GROUP, consumer, options));
+            } catch (Exception e) {
+                log.error("重置订单消息空闲时间异常 stream:{}", stream, e);
+            }
+        }));
+    }
+
+    /**
+     * 本节点在某个消息队列中还没有处理完成的消息id
+     */
+    private Set<RecordId> inFlightIds(String stream) {
+        Set<RecordId> ids = new HashSet<>();
+        for (OrderMessage message : inFlight) {
+            if (message.stream.equals(stream)) {
+                ids.add(message.recordId);
+            }
+        }
+        return ids;
+    }
+
+    private void recoverPending(String stream) {
+        String recoverName = consumerPrefix + "recover";
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(stream, SECKILL_ORDER_GROUP, Range.unbounded(), batchSize);
+            List<RecordId> idle = new ArrayList<>();
+            List<RecordId> dead = new ArrayList<>();
+            Set<RecordId> local = inFlightIds(stream);
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < pendingIdleMillis
+                        || local.contains(message.getId())) {
+                    continue;
+                }
+                (message.getTotalDeliveryCount() >= maxDeliveries ? dead : idle).add(message.getId());
+            }
+            if (!dead.isEmpty()) {
+                moveToDeadLetter(stream, recoverName, dead);
+            }
+            if (idle.isEmpty()) {
+                return;
+            }
+            //XCLAIM只会转移空闲时间仍然超过阈值的消息，多个节点同时恢复时同一条消息只会被一个节点取得
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .claim(stream, SECKILL_ORDER_GROUP, recoverName,
+                            Duration.ofMillis(pendingIdleMillis), idle.toArray(new RecordId[0]));
+            if (records == null || records.isEmpty()) {
+                return;
+            }
+            claimedCount.add(records.size());
+            dispatch(recoverName, records);
+        } catch (Exception e) {
+            log.error("处理pending-list异常 stream:{}", stream, e);
+        }
+    }
+
+    /**
+     * 多次投递仍失败的消息写入死信队列后ACK，等待人工处理
+     */
+    private void moveToDeadLetter(String stream, String recoverName, List<RecordId> ids) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .claim(stream, SECKILL_ORDER_GROUP, recoverName,
+                        Duration.ofMillis(pendingIdleMillis), ids.toArray(new RecordId[0]));
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        List<RecordId> done = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            log.error("订单消息多次处理失败，转入死信队列 messageId:{} value:{}", record.getId(), record.getValue());
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_STREAM, record.getValue());
+            done.add(record.getId());
+        }
+        deadLetterCount.add(done.size());
+        acknowledge(stream, done);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 停止读取新消息，等待当前批次处理完成；未ACK的消息留在pending-list中，由其他节点或下次启动后重新处理
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (recoverExecutor != null) {
+            recoverExecutor.shutdown();
+        }
+        if (consumerExecutor != null) {
+            consumerExecutor.shutdown();
+            if (!consumerExecutor.awaitTermination(blockMillis + 10000, TimeUnit.MILLISECONDS)) {
+                log.warn("订单消费者未能在超时时间内停止");
+                //等待通道队列空间的消费者不再等待，未分发的消息留在pending-list中
+                consumerExecutor.shutdownNow();
+            }
+        }
+        if (laneExecutor != null) {
+            laneExecutor.shutdown();
+            if (!laneExecutor.awaitTermination(blockMillis + 10000, TimeUnit.MILLISECONDS)) {
+                log.warn("订单处理通道未能在超时时间内停止");
+            }
+        }
+    }
+
+    public long getHandledCount() {
+        return handledCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getClaimedCount() {
+        return claimedCount.sum();
+    }
+
+    public long getDeadLetterCount() {
+        return deadLetterCount.sum();
+    }
+
+    /**
+     * 各处理通道中等待处理的消息数量
+     */
+    public int[] getLaneDepths() {
+        Lane[] current = lanes;
+        if (current == null) {
+            return new int[0];
+        }
+        int[] depths = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            depths[i] = current[i].queue.size();
+        }
+        return depths;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("handled", getHandledCount());
+        result.put("failed", getFailedCount());
+        result.put("claimed", getClaimedCount());
+        result.put("deadLetter", getDeadLetterCount());
+        result.put("laneDepths", getLaneDepths());
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.OrderResult;
+import com.hmdp.entity.VoucherOrder;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATE_TTL;
+
+/**
+ * 秒杀订单处理状态，key为 seckill:state:{orderId}，值为 "userId:状态[:失败原因]"
+ * 下单成功后写入QUEUED，订单消费者写入数据库后按每个订单的实际结果更新为SUCCESS或FAILED，
+ * 只有数据库中存在的订单才是SUCCESS；用户轮询查询结果，不需要重复提交
+ */
+@Component
+public class SeckillOrderState {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 订单进入队列，订单消费者已经写入结果时不覆盖
+     */
+    public void queued(Long orderId, Long userId) {
+        stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_ORDER_STATE_KEY + orderId,
+                userId + ":" + QUEUED, SECKILL_ORDER_STATE_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 按每个订单的写入结果批量更新状态：数据库中存在的订单为SUCCESS，其余为FAILED，一次往返写入
+     *
+     * @param succeeded 数据库中存在的订单
+     * @param rejected  被拒绝的订单 -> 失败原因
+     */
+    public void update(Collection<VoucherOrder> succeeded, Map<VoucherOrder, String> rejected) {
+        if (succeeded.isEmpty() && rejected.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.from(SECKILL_ORDER_STATE_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (VoucherOrder order : succeeded) {
+                set(connection, order, SUCCESS, expiration);
+            }
+            for (Map.Entry<VoucherOrder, String> entry : rejected.entrySet()) {
+                set(connection, entry.getKey(), FAILED + ":" + entry.getValue(), expiration);
+            }
+            return null;
+        });
+    }
+
+    private static void set(RedisConnection connection, VoucherOrder order, String state, Expiration expiration) {
+        connection.stringCommands().set(
+                (SECKILL_ORDER_STATE_KEY + order.getId()).getBytes(StandardCharsets.UTF_8),
+                (order.getUserId() + ":" + state).getBytes(StandardCharsets.UTF_8),
+                expiration, RedisStringCommands.SetOption.upsert());
+    }
+
+    /**
+     * 查询订单状态，不存在（已过期）或不属于该用户时返回null
+     */
+    public OrderResult get(Long orderId, Long userId) {
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_STATE_KEY + orderId);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(":", 3);
+        if (parts.length < 2 || !parts[0].equals(userId.toString())) {
+            return null;
+        }
+        return new OrderResult(orderId, parts[1], parts.length > 2 ? parts[2] : null);
+    }
+}
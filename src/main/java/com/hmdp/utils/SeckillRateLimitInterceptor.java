@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 秒杀下单限流拦截器，被限流的请求直接返回429，不进入业务逻辑
+ */
+public class SeckillRateLimitInterceptor implements HandlerInterceptor {
+
+    //手动创建的拦截器无法使用依赖注入，通过构造函数传入
+    private final SeckillRateLimiter seckillRateLimiter;
+
+    public SeckillRateLimitInterceptor(SeckillRateLimiter seckillRateLimiter) {
+        this.seckillRateLimiter = seckillRateLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        int decision = seckillRateLimiter.tryAcquire(voucherId(request), user == null ? null : user.getId());
+        if (decision == SeckillRateLimiter.ADMITTED) {
+            return true;
+        }
+        String message = decision == SeckillRateLimiter.REJECTED_USER ? "操作过于频繁，请稍后再试" : "当前抢购人数过多，请稍后再试";
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail(message)));
+        return false;
+    }
+
+    /**
+     * 路径 /voucher-order/seckill/{id} 中的优惠券id
+     */
+    @SuppressWarnings("unchecked")
+    private static Long voucherId(HttpServletRequest request) {
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null || variables.get("id") == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(variables.get("id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+
+/**
+ * 秒杀下单限流，依次检查：
+ * 1. 单个用户的令牌桶，拦截同一用户的重复点击和脚本刷单
+ * 2. 本节点的令牌桶，超过节点处理能力的请求最多排队 max-wait-millis，超过则直接拒绝，保证被接受请求的响应时间
+ * 3. 可选的Redis全局令牌桶，按优惠券限制整个集群的下单速率
+ */
+@Component
+public class SeckillRateLimiter {
+
+    public static final int ADMITTED = 0;
+    public static final int REJECTED_USER = 1;
+    public static final int REJECTED_NODE = 2;
+    public static final int REJECTED_GLOBAL = 3;
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final TokenBucket nodeBucket;
+    private final Cache<Long, TokenBucket> userBuckets;
+    private final double userPermitsPerSecond;
+    private final double userBurst;
+    private final boolean globalEnabled;
+    private final String globalPermitsPerSecond;
+    private final String globalBurst;
+
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder rejectedUserCount = new LongAdder();
+    private final LongAdder rejectedNodeCount = new LongAdder();
+    private final LongAdder rejectedGlobalCount = new LongAdder();
+
+    public SeckillRateLimiter(StringRedisTemplate stringRedisTemplate,
+                              @Value("${hmdp.seckill.limit.enabled:true}") boolean enabled,
+                              @Value("${hmdp.seckill.limit.permits-per-second:2000}") double permitsPerSecond,
+                              @Value("${hmdp.seckill.limit.burst:2000}") double burst,
+                              @Value("${hmdp.seckill.limit.max-wait-millis:50}") long maxWaitMillis,
+                              @Value("${hmdp.seckill.limit.user-permits-per-second:1}") double userPermitsPerSecond,
+                              @Value("${hmdp.seckill.limit.user-burst:2}") double userBurst,
+                              @Value("${hmdp.seckill.limit.global.enabled:false}") boolean globalEnabled,
+                              @Value("${hmdp.seckill.limit.global.permits-per-second:10000}") double globalPermitsPerSecond,
+                              @Value("${hmdp.seckill.limit.global.burst:10000}") double globalBurst) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.nodeBucket = new TokenBucket(permitsPerSecond, burst);
+        this.userPermitsPerSecond = userPermitsPerSecond;
+        this.userBurst = userBurst;
+        //用户令牌桶在用户停止访问后过期，令牌桶已填满，过期后重新创建没有区别
+        this.userBuckets = Caffeine.newBuilder()
+                .expireAfterAccess((long) Math.ceil(userBurst / userPermitsPerSecond) + 1, TimeUnit.SECONDS)
+                .build();
+        this.globalEnabled = globalEnabled;
+        this.globalPermitsPerSecond = String.valueOf(globalPermitsPerSecond);
+        this.globalBurst = String.valueOf(globalBurst);
+    }
+
+    /**
+     * 尝试获取下单许可
+     *
+     * @param voucherId 优惠券id，用于全局限流
+     * @param userId    用户id，用于用户限流
+     * @return ADMITTED 或拒绝原因
+     */
+    public int tryAcquire(Long voucherId, Long userId) {
+        if (!enabled) {
+            return ADMITTED;
+        }
+        if (userId != null) {
+            TokenBucket userBucket = userBuckets.get(userId, id -> new TokenBucket(userPermitsPerSecond, userBurst));
+            if (!userBucket.tryAcquire()) {
+                rejectedUserCount.increment();
+                return REJECTED_USER;
+            }
+        }
+        long waitNanos = nodeBucket.reserve(maxWaitNanos);
+        if (waitNanos < 0) {
+            rejectedNodeCount.increment();
+            return REJECTED_NODE;
+        }
+        if (waitNanos > 0) {
+            queuedCount.increment();
+            LockSupport.parkNanos(waitNanos);
+        }
+        if (globalEnabled && voucherId != null) {
+            Long allowed = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT,
+                    Collections.singletonList(SECKILL_LIMIT_KEY + voucherId),
+                    globalPermitsPerSecond, globalBurst);
+            if (allowed == null || allowed == 0) {
+                rejectedGlobalCount.increment();
+                return REJECTED_GLOBAL;
+            }
+        }
+        admittedCount.increment();
+        return ADMITTED;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("admitted", admittedCount.sum());
+        result.put("queued", queuedCount.sum());
+        result.put("rejectedUser", rejectedUserCount.sum());
+        result.put("rejectedNode", rejectedNodeCount.sum());
+        result.put("rejectedGlobal", rejectedGlobalCount.sum());
+        return result;
+    }
+}
@@ -0,0 +1,398 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀券库存分片
+ * 热门优惠券的库存拆分到 K 个分片key中，key使用hash tag {voucherId:shard}，在Redis集群中分布到不同的节点，
+ * 单张优惠券的秒杀吞吐量随分片数增加
+ * 1. 用户按id哈希固定到一个分片，一人一单只在该分片的下单用户集合中判断
+ * 2. 该分片库存不足时，从其他分片（随机起点依次尝试）转移库存到该分片后重试，所有分片都不足时才返回库存不足
+ * 3. 分片数量在新增秒杀券时写入 seckill:shards:{voucherId}，分片数为1时使用原有的单key方式；
+ * 各节点缓存分片数量（没有记录时缓存1），写入或删除分片数量时通过Redis发布订阅通知所有节点清除缓存
+ * 4. 每个分片有自己的订单消息队列 stream.orders:{voucherId:shard}，Lua脚本扣减库存的同时记录下单用户并写入订单消息，
+ * 订单消息不再集中到一个Stream；分片消息队列登记在 seckill:streams 中，由订单消费者读取
+ * 5. 秒杀时间窗口写入每个分片（与分片库存在同一个slot），由Lua脚本使用Redis服务器时间判断；
+ * 有库存但没有时间窗口时按尚未开始处理，新增秒杀券时在事务提交后写入时间窗口
+ */
+@Component
+public class SeckillStockShards implements MessageListener {
+
+    /**
+     * 扣减库存结果：库存不足
+     */
+    public static final int SOLD_OUT = -1;
+    /**
+     * 扣减库存结果：重复下单
+     */
+    public static final int DUPLICATE = -2;
+    /**
+     * 扣减库存结果：秒杀尚未开始
+     */
+    public static final int NOT_STARTED = -3;
+    /**
+     * 扣减库存结果：秒杀已经结束
+     */
+    public static final int ENDED = -4;
+    /**
+     * 扣减库存结果：Redis中还没有库存
+     */
+    public static final int STOCK_MISSING = -5;
+
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final DefaultRedisScript<Long> SHARD_SCRIPT;
+    private static final DefaultRedisScript<Long> STEAL_SCRIPT;
+
+    static {
+        SHARD_SCRIPT = new DefaultRedisScript<>();
+        SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SHARD_SCRIPT.setResultType(Long.class);
+        STEAL_SCRIPT = new DefaultRedisScript<>();
+        STEAL_SCRIPT.setLocation(new ClassPathResource("seckill_steal.lua"));
+        STEAL_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int defaultShards;
+    @Value("${hmdp.seckill.preheat.reconcile-delay-seconds:300}")
+    private long reconcileDelaySeconds;
+
+    /**
+     * 优惠券的分片数量，创建后不会变化
+     */
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String orderKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String windowKey(Long voucherId, int shard) {
+        return SECKILL_WINDOW_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String streamKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_STREAM + ":{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 查询优惠券的分片数量，没有记录（分片功能上线前创建的优惠券）时为1
+     */
+    public int getShardCount(Long voucherId) {
+        Integer count = shardCounts.get(voucherId);
+        if (count != null) {
+            return count;
+        }
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + voucherId);
+        //没有记录时也缓存，避免不分片的优惠券每次下单多查询一次Redis
+        count = value == null ? 1 : Integer.parseInt(value);
+        shardCounts.put(voucherId, count);
+        return count;
+    }
+
+    /**
+     * 新增秒杀券时写入库存，按配置的分片数量平均拆分
+     */
+    public void init(Long voucherId, int stock) {
+        writeStock(voucherId, stock, Math.max(1, defaultShards));
+    }
+
+    /**
+     * 秒杀开始前按数据库库存重新写入，已有分片记录时保持原有分片数量
+     */
+    public void load(Long voucherId, int stock) {
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + voucherId);
+        writeStock(voucherId, stock, value == null ? Math.max(1, defaultShards) : Integer.parseInt(value));
+    }
+
+    private void writeStock(Long voucherId, int stock, int shards) {
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+        } else {
+            int[] split = split(stock, shards);
+            for (int i = 0; i < shards; i++) {
+                stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(split[i]));
+            }
+        }
+        stringRedisTemplate.opsForValue().set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        shardCounts.put(voucherId, shards);
+        registerStreams(voucherId);
+        //其他节点可能缓存了旧的分片数量
+        stringRedisTemplate.convertAndSend(SECKILL_SHARDS_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 登记分片订单消息队列，订单消费者据此读取；重复登记没有影响
+     */
+    public void registerStreams(Long voucherId) {
+        int shards = getShardCount(voucherId);
+        if (shards == 1) {
+            return;
+        }
+        String[] streams = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            streams[i] = streamKey(voucherId, i);
+        }
+        stringRedisTemplate.opsForSet().add(SECKILL_ORDER_STREAMS_KEY, streams);
+    }
+
+    /**
+     * 写入秒杀时间窗口，过期时间覆盖秒杀结束后的对账时间
+     */
+    public void setWindow(Long voucherId, LocalDateTime begin, LocalDateTime end) {
+        setWindow(voucherId, toEpochSecond(begin), toEpochSecond(end), windowTtl(end));
+    }
+
+    /**
+     * 时间窗口的过期时间（秒）：结束后等待对账，再保留一天；已经结束很久的秒杀券至少为1秒（过期时间不能为负数）
+     */
+    public long windowTtl(LocalDateTime end) {
+        long ttl = toEpochSecond(end) - toEpochSecond(LocalDateTime.now()) + reconcileDelaySeconds + SECONDS_PER_DAY;
+        return Math.max(1L, ttl);
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    /**
+     * 写入秒杀时间窗口，Lua脚本在窗口之外拒绝下单
+     *
+     * @param beginSecond 开始时间（秒）
+     * @param endSecond   结束时间（秒）
+     * @param ttlSeconds  窗口key的过期时间
+     */
+    public void setWindow(Long voucherId, long beginSecond, long endSecond, long ttlSeconds) {
+        String window = beginSecond + ":" + endSecond;
+        int shards = getShardCount(voucherId);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_WINDOW_KEY + voucherId, window, ttlSeconds, TimeUnit.SECONDS);
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            stringRedisTemplate.opsForValue().set(windowKey(voucherId, i), window, ttlSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean hasWindow(Long voucherId) {
+        int shards = getShardCount(voucherId);
+        String key = shards == 1 ? SECKILL_WINDOW_KEY + voucherId : windowKey(voucherId, 0);
+        return BooleanUtil.isTrue(stringRedisTemplate.hasKey(key));
+    }
+
+    /**
+     * Redis中是否还有该优惠券的库存数据
+     */
+    public boolean hasStock(Long voucherId) {
+        int shards = getShardCount(voucherId);
+        String key = shards == 1 ? SECKILL_STOCK_KEY + voucherId : stockKey(voucherId, 0);
+        return BooleanUtil.isTrue(stringRedisTemplate.hasKey(key));
+    }
+
+    /**
+     * Redis中的剩余库存（所有分片之和）
+     */
+    public long remainingStock(Long voucherId) {
+        long total = 0;
+        for (String key : keys(voucherId, SECKILL_STOCK_KEY, true)) {
+            String value = stringRedisTemplate.opsForValue().get(key);
+            total += value == null ? 0 : Long.parseLong(value);
+        }
+        return total;
+    }
+
+    /**
+     * Redis中记录的下单用户数量（所有分片之和）
+     */
+    public long orderCount(Long voucherId) {
+        long total = 0;
+        for (String key : keys(voucherId, SECKILL_ORDER_KEY, true)) {
+            Long size = stringRedisTemplate.opsForSet().size(key);
+            total += size == null ? 0 : size;
+        }
+        return total;
+    }
+
+    /**
+     * 删除优惠券的库存、下单用户、时间窗口、分片数量和预热标记，回收内存
+     */
+    public void evict(Long voucherId) {
+        List<String> keys = new ArrayList<>();
+        keys.addAll(keys(voucherId, SECKILL_STOCK_KEY, false));
+        keys.addAll(keys(voucherId, SECKILL_ORDER_KEY, false));
+        keys.addAll(keys(voucherId, SECKILL_WINDOW_KEY, false));
+        keys.add(SECKILL_SHARDS_KEY + voucherId);
+        keys.add(SECKILL_PREHEAT_KEY + voucherId);
+        //集群模式下不同slot的key不能在一个命令中删除
+        for (String key : keys) {
+            stringRedisTemplate.delete(key);
+        }
+        shardCounts.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SHARDS_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 删除分片订单消息队列，只在订单全部写入数据库后调用
+     */
+    public void evictStreams(Long voucherId) {
+        int shards = getShardCount(voucherId);
+        if (shards == 1) {
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            String stream = streamKey(voucherId, i);
+            stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_STREAMS_KEY, stream);
+            stringRedisTemplate.delete(stream);
+        }
+    }
+
+    /**
+     * 优惠券在某个前缀下的所有key，onlyCurrent为false时同时包含单key和分片key
+     */
+    private List<String> keys(Long voucherId, String prefix, boolean onlyCurrent) {
+        int shards = getShardCount(voucherId);
+        List<String> keys = new ArrayList<>(shards + 1);
+        if (shards == 1 || !onlyCurrent) {
+            keys.add(prefix + voucherId);
+        }
+        if (shards > 1) {
+            for (int i = 0; i < shards; i++) {
+                keys.add(prefix + "{" + voucherId + ":" + i + "}");
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 补充库存，按分片平均增加
+     */
+    public void addStock(Long voucherId, int count) {
+        int shards = getShardCount(voucherId);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, count);
+            return;
+        }
+        int[] split = split(count, shards);
+        for (int i = 0; i < shards; i++) {
+            if (split[i] > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, i), split[i]);
+            }
+        }
+    }
+
+    /**
+     * 分片模式下扣减库存，下单用户和订单消息都记录在用户所属的分片，与扣减库存在同一次脚本调用中完成
+     *
+     * @return 用户所属的分片序号，库存不足返回 SOLD_OUT，重复下单返回 DUPLICATE，不在秒杀时间内返回 NOT_STARTED 或 ENDED，
+     * Redis中还没有库存返回 STOCK_MISSING
+     */
+    public int acquire(Long voucherId, Long userId, Long orderId, int shards) {
+        int home = homeShard(userId, shards);
+        List<String> keys = Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home),
+                windowKey(voucherId, home), streamKey(voucherId, home));
+        Object[] args = {userId.toString(), voucherId.toString(), orderId.toString()};
+        Long result = stringRedisTemplate.execute(SHARD_SCRIPT, keys, args);
+        if (result == null || result != 3) {
+            return toAcquireResult(result, home);
+        }
+        //本分片库存不足，从其他分片转移一个库存到本分片后重试，随机起点避免所有用户集中到同一个分片
+        //转移的库存可能被同一分片的其他用户先扣减，此时继续转移；转移中途节点宕机最多少卖一个，不会超卖
+        int start = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            int shard = (start + i) % shards;
+            if (shard == home) {
+                continue;
+            }
+            while (moveOne(voucherId, shard, home)) {
+                result = stringRedisTemplate.execute(SHARD_SCRIPT, keys, args);
+                if (result == null || result != 3) {
+                    return toAcquireResult(result, home);
+                }
+            }
+        }
+        return SOLD_OUT;
+    }
+
+    /**
+     * 从 from 分片扣减一个库存并加到 to 分片
+     */
+    private boolean moveOne(Long voucherId, int from, int to) {
+        Long moved = stringRedisTemplate.execute(STEAL_SCRIPT, Collections.singletonList(stockKey(voucherId, from)));
+        if (moved == null || moved != 1) {
+            return false;
+        }
+        stringRedisTemplate.opsForValue().increment(stockKey(voucherId, to));
+        return true;
+    }
+
+    private static int toAcquireResult(Long result, int home) {
+        if (result == null) {
+            return SOLD_OUT;
+        }
+        if (result == 0) {
+            return home;
+        }
+        if (result == 2) {
+            return DUPLICATE;
+        }
+        if (result == 4) {
+            return NOT_STARTED;
+        }
+        if (result == 5) {
+            return ENDED;
+        }
+        if (result == 6) {
+            return STOCK_MISSING;
+        }
+        return SOLD_OUT;
+    }
+
+    private static int homeShard(Long userId, int shards) {
+        return Math.floorMod(Long.hashCode(userId), shards);
+    }
+
+    private static int[] split(int total, int shards) {
+        int[] split = new int[shards];
+        for (int i = 0; i < shards; i++) {
+            split[i] = total / shards + (i < total % shards ? 1 : 0);
+        }
+        return split;
+    }
+
+    /**
+     * 其他节点写入或删除了分片数量，清除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        shardCounts.remove(Long.valueOf(body));
+    }
+}
@@ -0,0 +1,213 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_PREHEAT_NAME;
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_PREHEAT_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_SCHEDULE_NAME;
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_SCHEDULE_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_PREHEAT_KEY;
+
+/**
+ * 秒杀券生命周期调度
+ * 1. 预热：秒杀开始前 lead-seconds 秒，缓存店铺优惠券列表，清除售罄标记；
+ * Redis库存和时间窗口在新增秒杀券时写入，预热只恢复丢失的数据，不覆盖已扣减的库存；
+ * 下单时发现Redis中没有库存也会立即预热，同一个秒杀券的预热通过锁互斥
+ * 2. 时间窗口由Lua脚本使用Redis服务器时间判断，不依赖各节点的本地时钟
+ * 3. 对账：秒杀结束 reconcile-delay-seconds 秒后（等待订单消费完成），比较Redis下单用户数量和数据库订单数量，
+ * 一致时以Redis剩余库存修正数据库库存，然后删除Redis中的库存、下单用户和时间窗口，回收内存；
+ * 不一致时等待下次检查，结束一天后仍不一致则记录错误并清理
+ */
+@Slf4j
+@Component
+public class SeckillVoucherScheduler {
+
+    /**
+     * 只对账最近结束的秒杀券
+     */
+    private static final long RECONCILE_LOOKBACK_DAYS = 7L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private SeckillStockShards seckillStockShards;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Value("${hmdp.seckill.preheat.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.seckill.preheat.lead-seconds:60}")
+    private long leadSeconds;
+    @Value("${hmdp.seckill.preheat.reconcile-delay-seconds:300}")
+    private long reconcileDelaySeconds;
+
+    @Scheduled(fixedDelayString = "${hmdp.seckill.preheat.scan-millis:10000}")
+    public void schedule() {
+        if (!enabled) {
+            return;
+        }
+        //多个节点同时运行时，只有获取到锁的节点处理；处理超过锁的有效时间时只释放自己的锁
+        ILock lock = new SimpleRedisLock(LOCK_SECKILL_SCHEDULE_NAME, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_SECKILL_SCHEDULE_TTL)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            preheat(now);
+            reconcile(now);
+        } catch (Exception e) {
+            log.error("秒杀券调度异常", e);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 预热即将开始和正在进行、但还没有预热标记的秒杀券
+     */
+    private void preheat(LocalDateTime now) {
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .le("begin_time", now.plusSeconds(leadSeconds))
+                .gt("end_time", now)
+                .list();
+        for (SeckillVoucher voucher : vouchers) {
+            Long voucherId = voucher.getVoucherId();
+            String preheatKey = SECKILL_PREHEAT_KEY + voucherId;
+            if (!BooleanUtil.isTrue(stringRedisTemplate.opsForValue().setIfAbsent(preheatKey, "1",
+                    seckillStockShards.windowTtl(voucher.getEndTime()), TimeUnit.SECONDS))) {
+                continue;
+            }
+            if (!preheat(voucher)) {
+                //移除预热标记，下次重新预热
+                stringRedisTemplate.delete(preheatKey);
+            }
+        }
+    }
+
+    /**
+     * 下单时发现Redis中没有库存（还没有预热或数据丢失），立即预热，不等待下次扫描
+     *
+     * @return 是否预热完成，秒杀券不存在、不在预热时间范围内或其他节点正在预热时返回false
+     */
+    public boolean preheat(Long voucherId) {
+        if (!enabled) {
+            return false;
+        }
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        LocalDateTime now = LocalDateTime.now();
+        if (voucher == null || voucher.getBeginTime().isAfter(now.plusSeconds(leadSeconds))
+                || !voucher.getEndTime().isAfter(now)) {
+            return false;
+        }
+        if (!preheat(voucher)) {
+            return false;
+        }
+        stringRedisTemplate.opsForValue().set(SECKILL_PREHEAT_KEY + voucherId, "1",
+                seckillStockShards.windowTtl(voucher.getEndTime()), TimeUnit.SECONDS);
+        return true;
+    }
+
+    private boolean preheat(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        ILock lock = new SimpleRedisLock(LOCK_SECKILL_PREHEAT_NAME + voucherId, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_SECKILL_PREHEAT_TTL)) {
+            return false;
+        }
+        try {
+            //Redis库存只在丢失时按数据库恢复；已有的库存可能已经被扣减，数据库库存要等订单消费后才更新，不能覆盖
+            if (!seckillStockShards.hasStock(voucherId)) {
+                seckillStockShards.load(voucherId, voucher.getStock());
+            }
+            //时间窗口在新增秒杀券时写入，这里只补充丢失的窗口
+            if (!seckillStockShards.hasWindow(voucherId)) {
+                seckillStockShards.setWindow(voucherId, voucher.getBeginTime(), voucher.getEndTime());
+            }
+            seckillStockShards.registerStreams(voucherId);
+            Voucher info = voucherService.getById(voucherId);
+            if (info != null) {
+                voucherService.cacheVoucherOfShop(info.getShopId());
+            }
+            soldOutRegistry.reset(voucherId);
+            log.info("秒杀券预热完成 voucherId:{} stock:{}", voucherId, voucher.getStock());
+            return true;
+        } catch (Exception e) {
+            log.error("秒杀券预热失败 voucherId:{}", voucherId, e);
+            return false;
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 对账并清理已经结束的秒杀券
+     */
+    private void reconcile(LocalDateTime now) {
+        LocalDateTime endBefore = now.minusSeconds(reconcileDelaySeconds);
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .le("end_time", endBefore)
+                .gt("end_time", endBefore.minusDays(RECONCILE_LOOKBACK_DAYS))
+                .list();
+        for (SeckillVoucher voucher : vouchers) {
+            Long voucherId = voucher.getVoucherId();
+            if (!seckillStockShards.hasStock(voucherId)) {
+                continue;
+            }
+            try {
+                long redisOrders = seckillStockShards.orderCount(voucherId);
+                long dbOrders = voucherOrderService.query().eq("voucher_id", voucherId).count();
+                if (redisOrders != dbOrders) {
+                    if (voucher.getEndTime().plusDays(1).isAfter(now)) {
+                        //订单可能还在队列中，下次继续检查
+                        log.warn("秒杀券订单数量不一致，等待下次对账 voucherId:{} redis:{} db:{}",
+                                voucherId, redisOrders, dbOrders);
+                        continue;
+                    }
+                    log.error("秒杀券订单数量不一致，停止对账 voucherId:{} redis:{} db:{}",
+                            voucherId, redisOrders, dbOrders);
+                } else {
+                    //订单已经全部写入数据库，删除分片订单消息队列；不一致时保留，等待人工处理
+                    seckillStockShards.evictStreams(voucherId);
+                    long remaining = seckillStockShards.remainingStock(voucherId);
+                    if (remaining != voucher.getStock()) {
+                        log.warn("秒杀券库存不一致，以Redis为准 voucherId:{} redis:{} db:{}",
+                                voucherId, remaining, voucher.getStock());
+                        seckillVoucherService.update()
+                                .set("stock", remaining)
+                                .eq("voucher_id", voucherId)
+                                .update();
+                    }
+                }
+                seckillStockShards.evict(voucherId);
+                soldOutRegistry.reset(voucherId);
+                Voucher info = voucherService.getById(voucherId);
+                if (info != null) {
+                    voucherService.evictVoucherOfShop(info.getShopId());
+                }
+                log.info("秒杀券已结束，清理Redis数据 voucherId:{}", voucherId);
+            } catch (Exception e) {
+                log.error("秒杀券对账失败 voucherId:{}", voucherId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.WarmUpStatus;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 店铺缓存预热：项目启动后或手动触发时，将店铺、店铺类型和GEO数据提前写入Redis，同时加载进程内坐标索引、名称索引和筛选目录
+ * 按id分批读取tb_shop（基于上一批最大id翻页），每批使用管道写入店铺缓存和按类型分组的GEO数据，
+ * 并按照每秒最大处理数量限速，避免对数据库造成压力
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer {
+
+    @Resource
+    ShopMapper shopMapper;
+    @Resource
+    IShopTypeService shopTypeService;
+    @Resource
+    CacheClient cacheClient;
+    @Resource
+    StringRedisTemplate stringRedisTemplate;
+    @Resource
+    ShopGeoIndex shopGeoIndex;
+    @Resource
+    ShopNameIndex shopNameIndex;
+    @Resource
+    ShopCatalog shopCatalog;
+
+    @Value("${hmdp.warm-up.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.warm-up.batch-size:500}")
+    private int batchSize;
+    @Value("${hmdp.warm-up.max-rows-per-second:5000}")
+    private int maxRowsPerSecond;
+
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("shop-cache-warm-up-", true));
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile WarmUpStatus status = new WarmUpStatus();
+
+    /**
+     * 项目启动完成后在后台预热
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * 开始预热，已经在预热中时返回false
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.submit(() -> {
+            try {
+                warmUp();
+            } catch (Exception e) {
+                status.setError(e.toString());
+                log.error("店铺缓存预热失败", e);
+            } finally {
+                status.setRunning(false);
+                status.setEndTime(LocalDateTime.now());
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public WarmUpStatus getStatus() {
+        return BeanUtil.copyProperties(status, WarmUpStatus.class);
+    }
+
+    private void warmUp() throws InterruptedException {
+        WarmUpStatus current = new WarmUpStatus();
+        current.setRunning(true);
+        current.setStartTime(LocalDateTime.now());
+        current.setProcessed(0L);
+        current.setLastId(0L);
+        current.setTotal(shopMapper.selectCount(null).longValue());
+        status = current;
+        long begin = System.currentTimeMillis();
+
+        //店铺类型列表，未命中时会查询数据库并写入Redis
+        shopTypeService.queryTypeList();
+
+        long lastId = 0;
+        long processed = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("LIMIT " + batchSize));
+            if (shops.isEmpty()) {
+                break;
+            }
+            //店铺缓存
+            Map<Long, Shop> shopMap = shops.stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+            cacheClient.writeBatch(CACHE_SHOP_KEY, shopMap.keySet(), shopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            //GEO数据
+            writeGeo(shops);
+            shopGeoIndex.putAll(shops);
+            shopNameIndex.putAll(shops);
+            shopCatalog.putAll(shops);
+
+            lastId = shops.get(shops.size() - 1).getId();
+            processed += shops.size();
+            long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+            current.setProcessed(processed);
+            current.setLastId(lastId);
+            current.setRowsPerSecond(processed * 1000.0 / elapsed);
+            log.debug("店铺缓存预热进度:{}/{}", processed, current.getTotal());
+
+            //限速：按照每秒最大处理数量计算应当花费的时间，处理过快时等待
+            long expected = processed * 1000 / Math.max(1, maxRowsPerSecond);
+            if (expected > elapsed) {
+                Thread.sleep(expected - elapsed);
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+        current.setRowsPerSecond(processed * 1000.0 / elapsed);
+        shopGeoIndex.markReady();
+        shopNameIndex.markReady();
+        shopCatalog.markReady();
+        log.info("店铺缓存预热完成,数量:{},耗时:{}ms", processed, elapsed);
+    }
+
+    /**
+     * 按店铺类型分组，使用管道批量写入GEO数据
+     */
+    private void writeGeo(List<Shop> shops) {
+        Map<Long, List<Shop>> byType = shops.stream()
+                .filter(shop -> shop.getTypeId() != null && shop.getX() != null && shop.getY() != null)
+                .collect(Collectors.groupingBy(Shop::getTypeId));
+        if (byType.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<Long, List<Shop>> entry : byType.entrySet()) {
+                Map<byte[], Point> locations = new HashMap<>(entry.getValue().size() * 2);
+                for (Shop shop : entry.getValue()) {
+                    locations.put(shop.getId().toString().getBytes(StandardCharsets.UTF_8),
+                            new Point(shop.getX(), shop.getY()));
+                }
+                byte[] key = (SHOP_GEO_KEY + entry.getKey()).getBytes(StandardCharsets.UTF_8);
+                connection.geoCommands().geoAdd(key, locations);
+            }
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
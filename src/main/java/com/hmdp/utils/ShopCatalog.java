@@ -0,0 +1,383 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CATALOG_CHANNEL;
+
+/**
+ * 店铺多条件筛选的进程内列式目录
+ * 1. 每个属性一个基本类型数组（按行保存），店铺类型和商圈各一组BitSet，筛选时先按BitSet求交集，再逐行判断价格、评分、营业时间和距离
+ * 2. 支持按评分、销量、人均价格、距离排序并分页，店铺数据按页批量从店铺缓存读取
+ * 3. 由店铺缓存预热加载全部店铺后启用，店铺新增或修改后原地更新对应的行，并通过Redis发布订阅同步到所有节点
+ * 4. 查询使用读锁可以并发执行，更新使用写锁
+ */
+@Slf4j
+@Component
+public class ShopCatalog implements MessageListener {
+
+    public static final String SORT_SCORE = "score";
+    public static final String SORT_SOLD = "sold";
+    public static final String SORT_AVG_PRICE = "avgPrice";
+    public static final String SORT_DISTANCE = "distance";
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MINUTES_PER_DAY = 1440;
+
+    /**
+     * 查询结果：当前页的店铺id、距离（没有传入坐标时为null）和符合条件的总数
+     */
+    public static final class Page {
+        private final List<Long> ids;
+        private final List<Double> distances;
+        private final long total;
+
+        Page(List<Long> ids, List<Double> distances, long total) {
+            this.ids = ids;
+            this.distances = distances;
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public List<Double> getDistances() {
+            return distances;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int rowCount;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] typeIds = new long[INITIAL_CAPACITY];
+    private long[] avgPrices = new long[INITIAL_CAPACITY];
+    private int[] scores = new int[INITIAL_CAPACITY];
+    private int[] solds = new int[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    /**
+     * 营业开始、结束时间（当天分钟数），无法解析时为-1
+     */
+    private int[] openFrom = new int[INITIAL_CAPACITY];
+    private int[] openTo = new int[INITIAL_CAPACITY];
+    private String[] areas = new String[INITIAL_CAPACITY];
+    /**
+     * 坐标有效的行
+     */
+    private final BitSet located = new BitSet();
+    private final BitSet live = new BitSet();
+    private final Map<Long, BitSet> byType = new HashMap<>();
+    private final Map<String, BitSet> byArea = new HashMap<>();
+    private final Map<Long, Integer> rows = new HashMap<>();
+    private volatile boolean ready;
+
+    public ShopCatalog(StringRedisTemplate stringRedisTemplate,
+                       @Value("${hmdp.catalog.enabled:true}") boolean enabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 店铺缓存预热完成后调用
+     */
+    public void markReady() {
+        if (enabled) {
+            ready = true;
+            log.info("店铺筛选目录加载完成,数量:{}", rows.size());
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 批量加载店铺（预热时使用，不通知其他节点）
+     */
+    public void putAll(Collection<Shop> shops) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            shops.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 店铺新增或修改后更新目录，并通知其他节点
+     *
+     * @param shop 修改后的完整店铺数据
+     */
+    public void update(Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        stringRedisTemplate.convertAndSend(SHOP_CATALOG_CHANNEL, JSONUtil.toJsonStr(shop));
+    }
+
+    private void put(Shop shop) {
+        Integer row = rows.get(shop.getId());
+        if (row == null) {
+            ensureCapacity(rowCount + 1);
+            row = rowCount++;
+            rows.put(shop.getId(), row);
+        } else {
+            //从原类型、商圈的索引中移除
+            clear(byType, typeIds[row], row);
+            clear(byArea, areas[row], row);
+        }
+        ids[row] = shop.getId();
+        typeIds[row] = shop.getTypeId() == null ? 0 : shop.getTypeId();
+        avgPrices[row] = shop.getAvgPrice() == null ? 0 : shop.getAvgPrice();
+        scores[row] = shop.getScore() == null ? 0 : shop.getScore();
+        solds[row] = shop.getSold() == null ? 0 : shop.getSold();
+        located.set(row, shop.getX() != null && shop.getY() != null);
+        xs[row] = shop.getX() == null ? 0 : shop.getX();
+        ys[row] = shop.getY() == null ? 0 : shop.getY();
+        int[] hours = parseOpenHours(shop.getOpenHours());
+        openFrom[row] = hours[0];
+        openTo[row] = hours[1];
+        areas[row] = shop.getArea();
+        if (shop.getTypeId() != null) {
+            byType.computeIfAbsent(shop.getTypeId(), k -> new BitSet()).set(row);
+        }
+        if (shop.getArea() != null) {
+            byArea.computeIfAbsent(shop.getArea(), k -> new BitSet()).set(row);
+        }
+        live.set(row);
+    }
+
+    private static <K> void clear(Map<K, BitSet> index, K key, int row) {
+        BitSet bits = key == null ? null : index.get(key);
+        if (bits != null) {
+            bits.clear(row);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        typeIds = Arrays.copyOf(typeIds, newCapacity);
+        avgPrices = Arrays.copyOf(avgPrices, newCapacity);
+        scores = Arrays.copyOf(scores, newCapacity);
+        solds = Arrays.copyOf(solds, newCapacity);
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        openFrom = Arrays.copyOf(openFrom, newCapacity);
+        openTo = Arrays.copyOf(openTo, newCapacity);
+        areas = Arrays.copyOf(areas, newCapacity);
+    }
+
+    /**
+     * 解析营业时间，例如 10:00-22:00、11:30-03:00（跨天），无法解析时返回 [-1, -1]
+     */
+    public static int[] parseOpenHours(String openHours) {
+        int[] unknown = {-1, -1};
+        if (openHours == null) {
+            return unknown;
+        }
+        String[] parts = openHours.trim().split("-");
+        if (parts.length != 2) {
+            return unknown;
+        }
+        int from = parseMinutes(parts[0]);
+        int to = parseMinutes(parts[1]);
+        return from < 0 || to < 0 ? unknown : new int[]{from, to};
+    }
+
+    private static int parseMinutes(String time) {
+        String[] parts = time.trim().split(":");
+        if (parts.length != 2) {
+            return -1;
+        }
+        try {
+            int hour = Integer.parseInt(parts[0]);
+            int minute = Integer.parseInt(parts[1]);
+            int minutes = hour * 60 + minute;
+            return hour < 0 || minute < 0 || minute >= 60 || minutes > MINUTES_PER_DAY ? -1 : minutes;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean isOpen(int row, int minute) {
+        return isOpen(openFrom[row], openTo[row], minute);
+    }
+
+    /**
+     * 是否在营业时间内
+     *
+     * @param hours  parseOpenHours 的结果
+     * @param minute 当天的分钟数
+     */
+    public static boolean isOpen(int[] hours, int minute) {
+        return isOpen(hours[0], hours[1], minute);
+    }
+
+    private static boolean isOpen(int from, int to, int minute) {
+        if (from < 0) {
+            return false;
+        }
+        if (from <= to) {
+            return minute >= from && minute < to;
+        }
+        //跨天营业
+        return minute >= from || minute < to;
+    }
+
+    /**
+     * 按条件筛选、排序并分页
+     *
+     * @param from 起始位置
+     * @param size 返回数量
+     */
+    public Page query(ShopFilter filter, int from, int size) {
+        boolean hasLocation = filter.getX() != null && filter.getY() != null;
+        String sort = filter.getSortBy();
+        if (sort == null || (SORT_DISTANCE.equals(sort) && !hasLocation)) {
+            sort = hasLocation ? SORT_DISTANCE : SORT_SCORE;
+        }
+        LocalTime now = LocalTime.now();
+        int minute = now.getHour() * 60 + now.getMinute();
+
+        lock.readLock().lock();
+        try {
+            //1.类型、商圈的BitSet求交集
+            BitSet candidates = (BitSet) live.clone();
+            if (filter.getTypeId() != null) {
+                candidates.and(byType.getOrDefault(filter.getTypeId(), new BitSet()));
+            }
+            if (filter.getArea() != null) {
+                candidates.and(byArea.getOrDefault(filter.getArea(), new BitSet()));
+            }
+            if (hasLocation) {
+                candidates.and(located);
+            }
+            //2.逐行判断列条件
+            int[] matched = new int[candidates.cardinality()];
+            double[] distances = hasLocation ? new double[rowCount] : null;
+            int count = 0;
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (filter.getMinPrice() != null && avgPrices[row] < filter.getMinPrice()) {
+                    continue;
+                }
+                if (filter.getMaxPrice() != null && avgPrices[row] > filter.getMaxPrice()) {
+                    continue;
+                }
+                if (filter.getMinScore() != null && scores[row] < filter.getMinScore()) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(filter.getOpenNow()) && !isOpen(row, minute)) {
+                    continue;
+                }
+                if (hasLocation) {
+                    double distance = ShopGeoIndex.distance(filter.getX(), filter.getY(), xs[row], ys[row]);
+                    if (filter.getMaxDistance() != null && distance > filter.getMaxDistance()) {
+                        continue;
+                    }
+                    distances[row] = distance;
+                }
+                matched[count++] = row;
+            }
+            //3.排序并分页
+            Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = matched[i];
+            }
+            Arrays.sort(sorted, comparator(sort, distances));
+            List<Long> pageIds = new ArrayList<>(size);
+            List<Double> pageDistances = new ArrayList<>(size);
+            for (int i = from; i < count && pageIds.size() < size; i++) {
+                int row = sorted[i];
+                pageIds.add(ids[row]);
+                pageDistances.add(hasLocation ? distances[row] : null);
+            }
+            return new Page(pageIds, pageDistances, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Comparator<Integer> comparator(String sort, double[] distances) {
+        Comparator<Integer> comparator;
+        switch (sort) {
+            case SORT_SOLD:
+                comparator = (a, b) -> Integer.compare(solds[b], solds[a]);
+                break;
+            case SORT_AVG_PRICE:
+                comparator = (a, b) -> Long.compare(avgPrices[a], avgPrices[b]);
+                break;
+            case SORT_DISTANCE:
+                comparator = (a, b) -> Double.compare(distances[a], distances[b]);
+                break;
+            default:
+                comparator = (a, b) -> Integer.compare(scores[b], scores[a]);
+        }
+        return comparator.thenComparing((a, b) -> Long.compare(ids[a], ids[b]));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) {
+            return;
+        }
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到店铺变更消息,{}", body);
+        Shop shop = JSONUtil.toBean(body, Shop.class);
+        lock.writeLock().lock();
+        try {
+            put(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+
+/**
+ * 店铺坐标的进程内网格索引，按店铺类型分别建立
+ * 1. 经纬度按 cell-degrees 划分网格，每个网格保存其中的店铺数组（写时复制），查询不加锁
+ * 2. 附近查询从所在网格开始逐圈向外扩展，已经找到足够数量、且更远的网格不可能更近时停止，距离计算与Redis GEO一致
+ * 3. 支持按（距离，店铺id）游标继续查询，跳过全部比游标更近的圈
+ * 4. 由店铺缓存预热加载全部店铺后才启用，店铺新增或修改后通过Redis发布订阅同步到所有节点；未启用时使用Redis GEO查询
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements MessageListener {
+
+    /**
+     * Redis GEO使用的地球半径（米）
+     */
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final String PUT = "+";
+    private static final String REMOVE = "-";
+    public static final Comparator<Neighbor> ORDER =
+            Comparator.comparingDouble(Neighbor::getDistance).thenComparingLong(Neighbor::getId);
+
+    /**
+     * 查询结果：店铺id和距离（米）
+     */
+    public static final class Neighbor {
+        private final long id;
+        private final double distance;
+
+        public Neighbor(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static final class Entry {
+        final long id;
+        final long typeId;
+        final double x;
+        final double y;
+        final long cell;
+
+        Entry(long id, long typeId, double x, double y, long cell) {
+            this.id = id;
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+            this.cell = cell;
+        }
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final double cellDegrees;
+    /**
+     * 店铺类型 -> 网格 -> 店铺
+     */
+    private final Map<Long, Map<Long, Entry[]>> grids = new ConcurrentHashMap<>();
+    /**
+     * 店铺id -> 当前位置，店铺修改类型或坐标时从原网格移除
+     */
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public ShopGeoIndex(StringRedisTemplate stringRedisTemplate,
+                        @Value("${hmdp.geo-index.enabled:true}") boolean enabled,
+                        @Value("${hmdp.geo-index.cell-degrees:0.01}") double cellDegrees) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * 索引已加载全部店铺，可以代替Redis GEO查询
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 店铺缓存预热完成后调用
+     */
+    public void markReady() {
+        if (enabled) {
+            ready = true;
+            log.info("店铺坐标索引加载完成,数量:{}", entries.size());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 批量加载店铺（预热时使用，不通知其他节点）
+     */
+    public void putAll(Collection<Shop> shops) {
+        if (!enabled) {
+            return;
+        }
+        for (Shop shop : shops) {
+            if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+            }
+        }
+    }
+
+    /**
+     * 店铺新增或修改后更新索引，并通知其他节点；没有类型或坐标的店铺从索引中移除
+     */
+    public void update(Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        String message;
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            remove(shop.getId());
+            message = REMOVE + shop.getId();
+        } else {
+            put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+            message = PUT + shop.getId() + ":" + shop.getTypeId() + ":" + shop.getX() + ":" + shop.getY();
+        }
+        stringRedisTemplate.convertAndSend(SHOP_GEO_CHANNEL, message);
+    }
+
+    private synchronized void put(long id, long typeId, double x, double y) {
+        Entry entry = new Entry(id, typeId, x, y, cellOf(x, y));
+        Entry old = entries.put(id, entry);
+        if (old != null) {
+            removeFromCell(old);
+        }
+        Map<Long, Entry[]> grid = grids.computeIfAbsent(typeId, k -> new ConcurrentHashMap<>());
+        Entry[] cell = grid.getOrDefault(entry.cell, EMPTY);
+        Entry[] copy = new Entry[cell.length + 1];
+        System.arraycopy(cell, 0, copy, 0, cell.length);
+        copy[cell.length] = entry;
+        grid.put(entry.cell, copy);
+    }
+
+    private synchronized void remove(long id) {
+        Entry old = entries.remove(id);
+        if (old != null) {
+            removeFromCell(old);
+        }
+    }
+
+    private void removeFromCell(Entry entry) {
+        Map<Long, Entry[]> grid = grids.get(entry.typeId);
+        if (grid == null) {
+            return;
+        }
+        Entry[] cell = grid.get(entry.cell);
+        if (cell == null) {
+            return;
+        }
+        List<Entry> rest = new ArrayList<>(cell.length);
+        for (Entry e : cell) {
+            if (e.id != entry.id) {
+                rest.add(e);
+            }
+        }
+        if (rest.isEmpty()) {
+            grid.remove(entry.cell);
+        } else {
+            grid.put(entry.cell, rest.toArray(EMPTY));
+        }
+    }
+
+    /**
+     * 查询附近的店铺，按（距离，店铺id）升序
+     *
+     * @param radius        查询半径（米）
+     * @param afterDistance 游标：上一页最后一个店铺的距离，第一页为null
+     * @param afterId       游标：上一页最后一个店铺的id
+     * @param limit         返回数量
+     */
+    public List<Neighbor> nearby(long typeId, double x, double y, double radius,
+                                 Double afterDistance, Long afterId, int limit) {
+        Map<Long, Entry[]> grid = grids.get(typeId);
+        if (grid == null || grid.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long cx = (long) Math.floor(x / cellDegrees);
+        long cy = (long) Math.floor(y / cellDegrees);
+        double cellHeight = cellDegrees * METERS_PER_DEGREE;
+        //网格宽度不超过高度，一圈中任意店铺的距离不超过 (r+1) * 对角线
+        double cellDiagonal = cellHeight * Math.sqrt(2);
+        int maxRing = (int) Math.ceil(180 / cellDegrees);
+        List<Neighbor> found = new ArrayList<>();
+        for (int r = 0; r <= maxRing; r++) {
+            //整圈都比游标更近时跳过
+            if (afterDistance == null || (r + 1) * cellDiagonal >= afterDistance) {
+                scanRing(grid, cx, cy, r, x, y, radius, afterDistance, afterId, found);
+            }
+            //圈外的店铺距离至少为 r 个网格（按纬度最高处的网格宽度计算）
+            double latitude = Math.min(MAX_LATITUDE, Math.abs(y) + (r + 1) * cellDegrees);
+            double covered = r * Math.min(cellHeight, cellHeight * Math.cos(Math.toRadians(latitude)));
+            if (covered >= radius) {
+                break;
+            }
+            if (found.size() >= limit) {
+                found.sort(ORDER);
+                if (found.get(limit - 1).distance <= covered) {
+                    break;
+                }
+            }
+        }
+        found.sort(ORDER);
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+
+    private void scanRing(Map<Long, Entry[]> grid, long cx, long cy, int r, double x, double y, double radius,
+                          Double afterDistance, Long afterId, List<Neighbor> found) {
+        if (r == 0) {
+            scanCell(grid, cx, cy, x, y, radius, afterDistance, afterId, found);
+            return;
+        }
+        for (long dx = -r; dx <= r; dx++) {
+            scanCell(grid, cx + dx, cy - r, x, y, radius, afterDistance, afterId, found);
+            scanCell(grid, cx + dx, cy + r, x, y, radius, afterDistance, afterId, found);
+        }
+        for (long dy = -r + 1; dy <= r - 1; dy++) {
+            scanCell(grid, cx - r, cy + dy, x, y, radius, afterDistance, afterId, found);
+            scanCell(grid, cx + r, cy + dy, x, y, radius, afterDistance, afterId, found);
+        }
+    }
+
+    private void scanCell(Map<Long, Entry[]> grid, long cx, long cy, double x, double y, double radius,
+                          Double afterDistance, Long afterId, List<Neighbor> found) {
+        Entry[] cell = grid.get(cellKey(cx, cy));
+        if (cell == null) {
+            return;
+        }
+        for (Entry entry : cell) {
+            double distance = distance(x, y, entry.x, entry.y);
+            if (distance > radius) {
+                continue;
+            }
+            if (!isAfter(distance, entry.id, afterDistance, afterId)) {
+                continue;
+            }
+            found.add(new Neighbor(entry.id, distance));
+        }
+    }
+
+    /**
+     * 店铺是否排在游标（距离，店铺id）之后，没有游标时为true
+     */
+    public static boolean isAfter(double distance, long id, Double afterDistance, Long afterId) {
+        if (afterDistance == null) {
+            return true;
+        }
+        if (distance != afterDistance) {
+            return distance > afterDistance;
+        }
+        return afterId != null && id > afterId;
+    }
+
+    private long cellOf(double x, double y) {
+        return cellKey((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return cx << 32 | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 球面距离（米），与Redis GEODIST的计算方式相同
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到店铺坐标变更消息,{}", body);
+        if (!enabled) {
+            return;
+        }
+        if (body.startsWith(REMOVE)) {
+            remove(Long.parseLong(body.substring(1)));
+            return;
+        }
+        String[] parts = body.substring(1).split(":");
+        put(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+    }
+}
@@ -0,0 +1,204 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 按店铺类型分类浏览的列表缓存
+ * 1. 每个类型、每种排序一个ZSet，成员为店铺id，分数为排序字段；店铺数据按页批量从店铺缓存读取
+ * 2. 排序不存在时从数据库查询该类型全部店铺的排序字段，写入临时key后RENAME，查询不会看到只写入一部分的列表
+ * 3. 店铺新增或修改后增量更新已经存在的排序，类型变化时从原类型中移除；排序过期后重新从数据库构建，修正可能的偏差
+ */
+@Slf4j
+@Component
+public class ShopListingCache {
+
+    /**
+     * 支持的排序：排序名称 -> 排序字段
+     */
+    private static final Map<String, Sort> SORTS = new LinkedHashMap<>();
+    private static final int REBUILD_BATCH = 1000;
+    private static final DefaultRedisScript<Long> RANK_SCRIPT;
+
+    static {
+        SORTS.put("score", new Sort("score", false, shop -> value(shop.getScore())));
+        SORTS.put("sold", new Sort("sold", false, shop -> value(shop.getSold())));
+        SORTS.put("avgPrice", new Sort("avg_price", true, shop -> value(shop.getAvgPrice())));
+        RANK_SCRIPT = new DefaultRedisScript<>();
+        RANK_SCRIPT.setLocation(new ClassPathResource("shop_rank.lua"));
+        RANK_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final class Sort {
+        final String column;
+        final boolean ascending;
+        final Function<Shop, Double> value;
+
+        Sort(String column, boolean ascending, Function<Shop, Double> value) {
+            this.column = column;
+            this.ascending = ascending;
+            this.value = value;
+        }
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.listing.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.listing.default-sort:score}")
+    private String defaultSort;
+
+    /**
+     * 排序名称，不支持时使用默认排序
+     */
+    public String resolveSort(String sortBy) {
+        if (sortBy != null && SORTS.containsKey(sortBy)) {
+            return sortBy;
+        }
+        return SORTS.containsKey(defaultSort) ? defaultSort : "score";
+    }
+
+    /**
+     * 排序对应的数据库字段
+     */
+    public String column(String sort) {
+        return SORTS.get(sort).column;
+    }
+
+    public boolean isAscending(String sort) {
+        return SORTS.get(sort).ascending;
+    }
+
+    private static String key(Long typeId, String sort) {
+        return SHOP_RANK_KEY + "{" + typeId + "}:" + sort;
+    }
+
+    private static Double value(Number number) {
+        return number == null ? 0D : number.doubleValue();
+    }
+
+    /**
+     * 查询一页店铺id
+     *
+     * @param sort 排序名称（resolveSort的结果）
+     * @return 店铺id，列表不可用（未开启或正在由其他线程构建）时返回null
+     */
+    public List<Long> page(Long typeId, String sort, int from, int size) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(typeId, sort);
+        Set<String> members = range(key, sort, from, size);
+        if (members.isEmpty() && !BooleanUtil.isTrue(stringRedisTemplate.hasKey(key))) {
+            if (!rebuild(typeId)) {
+                return null;
+            }
+            members = range(key, sort, from, size);
+        }
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            ids.add(Long.valueOf(member));
+        }
+        return ids;
+    }
+
+    private Set<String> range(String key, String sort, int from, int size) {
+        Set<String> members = isAscending(sort)
+                ? stringRedisTemplate.opsForZSet().range(key, from, from + size - 1)
+                : stringRedisTemplate.opsForZSet().reverseRange(key, from, from + size - 1);
+        return members == null ? Collections.emptySet() : members;
+    }
+
+    /**
+     * 从数据库构建一个类型的全部排序，同一时间只有一个线程构建
+     *
+     * @return 构建完成返回true，其他线程正在构建或该类型没有店铺返回false
+     */
+    private boolean rebuild(Long typeId) {
+        //构建超过锁的有效时间时只释放自己的锁
+        ILock lock = new SimpleRedisLock(LOCK_SHOP_RANK_NAME + typeId, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_SHOP_RANK_TTL)) {
+            return false;
+        }
+        try {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "score", "sold", "avg_price")
+                    .eq("type_id", typeId));
+            if (shops.isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<String, Sort> entry : SORTS.entrySet()) {
+                String key = key(typeId, entry.getKey());
+                String tmpKey = key + ":tmp";
+                stringRedisTemplate.delete(tmpKey);
+                for (int i = 0; i < shops.size(); i += REBUILD_BATCH) {
+                    Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+                    for (Shop shop : shops.subList(i, Math.min(shops.size(), i + REBUILD_BATCH))) {
+                        tuples.add(new DefaultTypedTuple<>(shop.getId().toString(), entry.getValue().value.apply(shop)));
+                    }
+                    stringRedisTemplate.opsForZSet().add(tmpKey, tuples);
+                }
+                stringRedisTemplate.rename(tmpKey, key);
+                stringRedisTemplate.expire(key, SHOP_RANK_TTL, TimeUnit.HOURS);
+            }
+            log.debug("店铺列表排序构建完成 typeId:{} 数量:{}", typeId, shops.size());
+            return true;
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 店铺新增或修改后增量更新列表
+     *
+     * @param oldTypeId 修改前的类型，新增时为null
+     * @param shop      最新的店铺数据
+     */
+    public void update(Long oldTypeId, Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        if (oldTypeId != null && !oldTypeId.equals(shop.getTypeId())) {
+            for (String sort : SORTS.keySet()) {
+                stringRedisTemplate.opsForZSet().remove(key(oldTypeId, sort), shop.getId().toString());
+            }
+        }
+        if (shop.getTypeId() == null) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(SORTS.size());
+        List<String> args = new ArrayList<>(SORTS.size() + 1);
+        args.add(shop.getId().toString());
+        for (Map.Entry<String, Sort> entry : SORTS.entrySet()) {
+            keys.add(key(shop.getTypeId(), entry.getKey()));
+            args.add(String.valueOf(entry.getValue().value.apply(shop)));
+        }
+        stringRedisTemplate.execute(RANK_SCRIPT, keys, args.toArray());
+    }
+}
@@ -0,0 +1,326 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.hmdp.utils.RedisConstants.SHOP_NAME_CHANNEL;
+
+/**
+ * 店铺名称的进程内倒排索引，代替 like '%name%' 全表扫描
+ * 1. 名称统一转小写并去掉空白和符号，按单字和相邻两字（n-gram）建立倒排表，适合没有分词的中文店铺名
+ * 2. 查询时取关键字所有两字组合的倒排表求交集，再校验名称包含关键字，结果与 like 查询一致
+ * 3. 排序：名称完全相同 > 前缀匹配 > 包含，同一级别按评分、销量降序
+ * 4. 按名称有序保存，支持前缀联想
+ * 5. 由店铺缓存预热加载全部店铺后启用，店铺新增或修改后通过Redis发布订阅同步到所有节点；未启用时查询数据库
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements MessageListener {
+
+    private static final class Doc {
+        final long id;
+        final String name;
+        final String normalized;
+        final int score;
+        final int sold;
+
+        Doc(long id, String name, int score, int sold) {
+            this.id = id;
+            this.name = name;
+            this.normalized = normalize(name);
+            this.score = score;
+            this.sold = sold;
+        }
+    }
+
+    /**
+     * 匹配结果：店铺和匹配级别（0完全相同，1前缀，2包含）
+     */
+    private static final class Hit {
+        final Doc doc;
+        final int level;
+
+        Hit(Doc doc, int level) {
+            this.doc = doc;
+            this.level = level;
+        }
+    }
+
+    private static final Comparator<Hit> ORDER = Comparator.<Hit>comparingInt(hit -> hit.level)
+            .thenComparing(hit -> hit.doc.score, Comparator.reverseOrder())
+            .thenComparing(hit -> hit.doc.sold, Comparator.reverseOrder())
+            .thenComparingLong(hit -> hit.doc.id);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final int maxSuggestScan;
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    /**
+     * 单字、两字 -> 店铺id
+     */
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    /**
+     * 名称 -> 店铺id，按名称排序
+     */
+    private final NavigableMap<String, Set<Long>> names = new ConcurrentSkipListMap<>();
+    private volatile boolean ready;
+
+    public ShopNameIndex(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.name-index.enabled:true}") boolean enabled,
+                         @Value("${hmdp.name-index.max-suggest-scan:1000}") int maxSuggestScan) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.maxSuggestScan = maxSuggestScan;
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 店铺缓存预热完成后调用
+     */
+    public void markReady() {
+        if (enabled) {
+            ready = true;
+            log.info("店铺名称索引加载完成,数量:{},词项数量:{}", docs.size(), postings.size());
+        }
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * 批量加载店铺（预热时使用，不通知其他节点）
+     */
+    public void putAll(Collection<Shop> shops) {
+        if (!enabled) {
+            return;
+        }
+        for (Shop shop : shops) {
+            put(toDoc(shop));
+        }
+    }
+
+    /**
+     * 店铺新增或修改后更新索引，并通知其他节点
+     */
+    public void update(Shop shop) {
+        if (!enabled) {
+            return;
+        }
+        Doc doc = toDoc(shop);
+        put(doc);
+        JSONObject message = new JSONObject();
+        message.set("id", doc.id);
+        message.set("name", doc.name);
+        message.set("score", doc.score);
+        message.set("sold", doc.sold);
+        stringRedisTemplate.convertAndSend(SHOP_NAME_CHANNEL, message.toString());
+    }
+
+    private static Doc toDoc(Shop shop) {
+        return new Doc(shop.getId(), StrUtil.nullToEmpty(shop.getName()),
+                shop.getScore() == null ? 0 : shop.getScore(), shop.getSold() == null ? 0 : shop.getSold());
+    }
+
+    private synchronized void put(Doc doc) {
+        Doc old = docs.put(doc.id, doc);
+        if (old != null) {
+            for (String token : tokens(old.normalized)) {
+                removePosting(postings, token, old.id);
+            }
+            removePosting(names, old.normalized, old.id);
+        }
+        if (doc.normalized.isEmpty()) {
+            return;
+        }
+        for (String token : tokens(doc.normalized)) {
+            postings.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+        names.computeIfAbsent(doc.normalized, k -> ConcurrentHashMap.newKeySet()).add(doc.id);
+    }
+
+    private static void removePosting(Map<String, Set<Long>> map, String key, long id) {
+        Set<Long> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 按名称关键字查询店铺id，按相关度排序后分页
+     *
+     * @param keyword 名称关键字
+     * @param from    起始位置
+     * @param size    返回数量
+     */
+    public List<Long> search(String keyword, int from, int size) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //取最短的倒排表作为候选，其余词项依次过滤
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String token : queryTokens(query)) {
+            Set<Long> ids = postings.get(token);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Hit> hits = new ArrayList<>();
+        for (Long id : lists.get(0)) {
+            boolean matched = true;
+            for (int i = 1; i < lists.size() && matched; i++) {
+                matched = lists.get(i).contains(id);
+            }
+            Doc doc = matched ? docs.get(id) : null;
+            //两字组合都存在不代表连续出现，校验名称包含关键字
+            if (doc != null && doc.normalized.contains(query)) {
+                hits.add(new Hit(doc, level(doc, query)));
+            }
+        }
+        hits.sort(ORDER);
+        List<Long> page = new ArrayList<>(size);
+        for (int i = from; i < hits.size() && page.size() < size; i++) {
+            page.add(hits.get(i).doc.id);
+        }
+        return page;
+    }
+
+    /**
+     * 名称前缀联想，前缀匹配不足时用包含关键字的店铺补充
+     *
+     * @return 店铺id -> 名称
+     */
+    public Map<Long, String> suggest(String prefix, int limit) {
+        String query = normalize(prefix);
+        Map<Long, String> result = new LinkedHashMap<>();
+        if (query.isEmpty() || limit <= 0) {
+            return result;
+        }
+        List<Hit> hits = new ArrayList<>();
+        int scanned = 0;
+        for (Set<Long> ids : names.subMap(query, true, query + Character.MAX_VALUE, false).values()) {
+            for (Long id : ids) {
+                Doc doc = docs.get(id);
+                if (doc != null) {
+                    hits.add(new Hit(doc, level(doc, query)));
+                }
+            }
+            if (++scanned >= maxSuggestScan) {
+                break;
+            }
+        }
+        hits.sort(ORDER);
+        for (Hit hit : hits) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            result.put(hit.doc.id, hit.doc.name);
+        }
+        for (Long id : search(prefix, 0, limit)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            Doc doc = docs.get(id);
+            if (doc != null && !result.containsKey(id)) {
+                result.put(id, doc.name);
+            }
+        }
+        return result;
+    }
+
+    private static int level(Doc doc, String query) {
+        if (doc.normalized.equals(query)) {
+            return 0;
+        }
+        return doc.normalized.startsWith(query) ? 1 : 2;
+    }
+
+    /**
+     * 建立索引的词项：全部单字和相邻两字
+     */
+    private static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            tokens.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                tokens.add(text.substring(i, i + 2));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 查询的词项：单字关键字使用单字，否则使用相邻两字
+     */
+    private static Set<String> queryTokens(String query) {
+        if (query.length() == 1) {
+            return Collections.singleton(query);
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < query.length(); i++) {
+            tokens.add(query.substring(i, i + 2));
+        }
+        return tokens;
+    }
+
+    /**
+     * 转小写，只保留文字和数字
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) {
+            return;
+        }
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到店铺名称变更消息,{}", body);
+        JSONObject json = JSONUtil.parseObj(body);
+        put(new Doc(json.getLong("id"), json.getStr("name", ""),
+                json.getInt("score", 0), json.getInt("sold", 0)));
+    }
+}
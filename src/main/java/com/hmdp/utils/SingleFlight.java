@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（请求合并）：同一节点内同一个key的并发加载只执行一次，其余线程等待并共享结果
+ * 用于缓存未命中时合并对数据库的重复查询，可用于店铺、优惠券、用户等任意数据；批量查询按id逐个合并
+ */
+@Component
+public class SingleFlight {
+
+    /**
+     * 正在执行中的加载任务
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 实际执行的加载次数
+     */
+    private final LongAdder loadCount = new LongAdder();
+    /**
+     * 被合并（没有实际执行，直接等待结果）的加载次数
+     */
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * 执行加载，同一key同一时间只有一个线程真正执行loader
+     *
+     * @param key    合并的key
+     * @param loader 加载函数
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            //已有线程在加载，等待其结果
+            coalescedCount.increment();
+            return (T) await(existing);
+        }
+        loadCount.increment();
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            //异常同样传递给所有等待的线程
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 批量加载，每个id按 keyPrefix + id 与 execute 使用同一组key合并：
+     * 没有其他线程在加载的id由当前线程一次调用loader加载，其他线程正在加载的id等待其结果
+     * 先完成自己负责的加载再等待其他线程，线程之间不会互相等待
+     *
+     * @param keyPrefix 合并的key前缀
+     * @param ids       需要加载的id
+     * @param loader    批量加载函数，返回结果中不存在的id按null处理
+     * @return 加载到的数据，不包含值为null的id
+     */
+    @SuppressWarnings("unchecked")
+    public <ID, T> Map<ID, T> executeBatch(String keyPrefix, Collection<ID> ids,
+                                           Function<Collection<ID>, Map<ID, T>> loader) {
+        Map<ID, CompletableFuture<Object>> owned = new HashMap<>(ids.size() * 2);
+        Map<ID, CompletableFuture<Object>> waiting = new HashMap<>();
+        for (ID id : ids) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(keyPrefix + id, future);
+            if (existing == null) {
+                owned.put(id, future);
+            } else {
+                waiting.put(id, existing);
+            }
+        }
+        Map<ID, T> result = new HashMap<>(ids.size() * 2);
+        if (!owned.isEmpty()) {
+            loadCount.add(owned.size());
+            List<ID> ownedIds = new ArrayList<>(owned.keySet());
+            try {
+                Map<ID, T> loaded = loader.apply(ownedIds);
+                if (loaded == null) {
+                    loaded = Collections.emptyMap();
+                }
+                for (Map.Entry<ID, CompletableFuture<Object>> entry : owned.entrySet()) {
+                    T value = loaded.get(entry.getKey());
+                    entry.getValue().complete(value);
+                    if (value != null) {
+                        result.put(entry.getKey(), value);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach((id, future) -> inFlight.remove(keyPrefix + id, future));
+            }
+        }
+        for (Map.Entry<ID, CompletableFuture<Object>> entry : waiting.entrySet()) {
+            coalescedCount.increment();
+            T value = (T) await(entry.getValue());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    private Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * 当前正在加载的key数量
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,209 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.BooleanUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisIdWorker.BEGIN_TIMESTAMP;
+import static com.hmdp.utils.RedisIdWorker.COUNT_BITS;
+
+/**
+ * 雪花算法id：31位时间戳（秒，与RedisIdWorker相同的起始时间） + 10位workerId + 22位序列号
+ * 时间戳与Redis自增方式相同，切换方式后id仍按时间递增；workerId 0 保留不用，雪花id的低32位不小于 2^22，
+ * Redis自增（redis/segment）方式每天的序列号小于 2^22（约419万）时两种方式的id不会冲突，超过后可能冲突
+ * 1. 生成id不访问Redis，时间戳和序列号保存在一个AtomicLong中，通过CAS无锁更新
+ * 2. 时钟回拨时继续使用上一次的时间戳，序列号用完后借用下一秒，保证唯一且递增
+ * 3. workerId启动时从Redis租用（SETNX id:worker:{workerId}），后台定期续期，续期失败时重新租用
+ * 4. 记录最后一次租用或续期成功的时间，超过租约时长仍未续期成功时workerId可能已被其他节点租用，拒绝生成id，
+ * 直到续期成功或重新租用到workerId
+ */
+@Slf4j
+@Component
+public class SnowflakeIdWorker {
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = COUNT_BITS - WORKER_BITS;
+    /**
+     * workerId 0 的id与Redis自增方式的序列号范围重叠，保留不用
+     */
+    private static final long MIN_WORKER_ID = 1;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("worker_lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.id.mode:redis}")
+    private String mode;
+    @Value("${hmdp.id.worker-id:-1}")
+    private long configuredWorkerId;
+    @Value("${hmdp.id.worker-lease-seconds:60}")
+    private long leaseSeconds;
+
+    private final String owner = UUID.randomUUID().toString(true);
+    /**
+     * 高位为上一次使用的时间戳，低 SEQUENCE_BITS 位为序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+    private final LongAdder clockBackwardCount = new LongAdder();
+    /**
+     * workerId及其租约到期时间（毫秒），到期时间按发起租用或续期请求前的本地时间计算；
+     * 两者放在一个对象中一起更新，生成id时不会读到新的到期时间和旧的workerId
+     */
+    private static final class Lease {
+        final long workerId;
+        final long expireMillis;
+
+        Lease(long workerId, long expireMillis) {
+            this.workerId = workerId;
+            this.expireMillis = expireMillis;
+        }
+    }
+
+    private volatile Lease lease;
+    private ScheduledExecutorService renewExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!"snowflake".equals(mode)) {
+            return;
+        }
+        if (configuredWorkerId >= 0) {
+            if (configuredWorkerId < MIN_WORKER_ID || configuredWorkerId > MAX_WORKER_ID) {
+                throw new IllegalStateException("hmdp.id.worker-id 取值范围为" + MIN_WORKER_ID + "-" + MAX_WORKER_ID
+                        + "，当前为" + configuredWorkerId);
+            }
+            //手动指定workerId，不使用Redis，不会过期
+            lease = new Lease(configuredWorkerId, Long.MAX_VALUE);
+            return;
+        }
+        lease = lease();
+        renewExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("id-worker-lease-", true));
+        long period = Math.max(1, leaseSeconds / 3);
+        renewExecutor.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用workerId（MIN_WORKER_ID-MAX_WORKER_ID）
+     */
+    private Lease lease() {
+        long count = MAX_WORKER_ID - MIN_WORKER_ID + 1;
+        long start = ThreadLocalRandom.current().nextLong(count);
+        for (long i = 0; i < count; i++) {
+            long id = MIN_WORKER_ID + (start + i) % count;
+            long requestMillis = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, owner, leaseSeconds, TimeUnit.SECONDS);
+            if (BooleanUtil.isTrue(success)) {
+                log.info("租用workerId:{}", id);
+                return new Lease(id, requestMillis + TimeUnit.SECONDS.toMillis(leaseSeconds));
+            }
+        }
+        throw new IllegalStateException("没有可用的workerId");
+    }
+
+    private void renew() {
+        long workerId = lease.workerId;
+        try {
+            long requestMillis = System.currentTimeMillis();
+            Long renewed = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + workerId), owner, String.valueOf(leaseSeconds));
+            if (renewed != null && renewed == 1) {
+                lease = new Lease(workerId, requestMillis + TimeUnit.SECONDS.toMillis(leaseSeconds));
+            } else {
+                //租约已过期（例如长时间无法访问Redis）并可能被其他节点使用，重新租用
+                log.warn("workerId:{} 租约已失效，重新租用", workerId);
+                lease = lease();
+            }
+        } catch (Exception e) {
+            log.error("workerId:{} 续期失败", workerId, e);
+        }
+    }
+
+    public long nextId() {
+        Lease held = lease;
+        if (held == null) {
+            throw new IllegalStateException("workerId未初始化，请检查 hmdp.id.mode 配置");
+        }
+        if (System.currentTimeMillis() >= held.expireMillis) {
+            //租约过期后workerId可能已被其他节点使用，继续生成可能产生重复id，拒绝生成直到续期成功或重新租用
+            throw new IllegalStateException("workerId:" + held.workerId + " 租约已过期");
+        }
+        long worker = held.workerId;
+        while (true) {
+            long current = state.get();
+            long lastSecond = current >>> SEQUENCE_BITS;
+            long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+            long next;
+            if (nowSecond > lastSecond) {
+                next = nowSecond << SEQUENCE_BITS;
+            } else {
+                if (nowSecond < lastSecond) {
+                    //时钟回拨或借用了未来的时间戳，继续使用上一次的时间戳
+                    clockBackwardCount.increment();
+                }
+                next = (current & SEQUENCE_MASK) == SEQUENCE_MASK
+                        ? (lastSecond + 1) << SEQUENCE_BITS
+                        : current + 1;
+            }
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << COUNT_BITS | worker << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public long getWorkerId() {
+        Lease current = lease;
+        return current == null ? -1 : current.workerId;
+    }
+
+    public long getClockBackwardCount() {
+        return clockBackwardCount.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (renewExecutor == null) {
+            return;
+        }
+        renewExecutor.shutdown();
+        long workerId = getWorkerId();
+        //释放租约，让重启后的节点或其他节点可以使用
+        try {
+            String value = stringRedisTemplate.opsForValue().get(ID_WORKER_KEY + workerId);
+            if (owner.equals(value)) {
+                stringRedisTemplate.delete(ID_WORKER_KEY + workerId);
+            }
+        } catch (Exception e) {
+            log.warn("释放workerId:{} 失败", workerId, e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄标记（进程内）
+ * 秒杀脚本返回库存不足后标记售罄，并通过Redis发布订阅通知所有节点，之后的请求在本地直接返回，不再执行Lua脚本
+ * 补充库存时清除标记并广播；为了避免清除消息丢失导致一直售罄，标记超过 recheck-seconds 后放行请求重新检查库存
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry implements MessageListener {
+
+    private static final String SOLD_OUT = "+";
+    private static final String RESET = "-";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long recheckMillis;
+    /**
+     * 优惠券id -> 标记售罄的时间
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+    private final LongAdder shortCircuitCount = new LongAdder();
+
+    public SoldOutRegistry(StringRedisTemplate stringRedisTemplate,
+                           @Value("${hmdp.seckill.sold-out.recheck-seconds:10}") long recheckSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.recheckMillis = TimeUnit.SECONDS.toMillis(recheckSeconds);
+    }
+
+    /**
+     * 判断优惠券是否已售罄，标记过期时清除标记并返回false
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long markedAt = soldOut.get(voucherId);
+        if (markedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - markedAt > recheckMillis) {
+            soldOut.remove(voucherId, markedAt);
+            return false;
+        }
+        shortCircuitCount.increment();
+        return true;
+    }
+
+    /**
+     * 标记售罄并通知其他节点
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.put(voucherId, System.currentTimeMillis()) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + voucherId);
+        }
+    }
+
+    /**
+     * 库存补充后清除售罄标记并通知其他节点
+     */
+    public void reset(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, RESET + voucherId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到秒杀券售罄消息,{}", body);
+        Long voucherId = Long.valueOf(body.substring(1));
+        if (body.startsWith(SOLD_OUT)) {
+            soldOut.putIfAbsent(voucherId, System.currentTimeMillis());
+        } else {
+            soldOut.remove(voucherId);
+        }
+    }
+
+    public long getShortCircuitCount() {
+        return shortCircuitCount.sum();
+    }
+}
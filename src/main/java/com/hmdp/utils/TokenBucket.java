@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内令牌桶
+ * 令牌按固定速率生成，最多积累 capacity 个；没有令牌时可以预约下一个令牌，等待时间超过上限则直接拒绝
+ * tryAcquire 只使用已经积累的令牌，不预约，一段时间内最多通过 capacity 加上期间生成的令牌数
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    /**
+     * 生成一个令牌的间隔（纳秒）
+     */
+    private final double intervalNanos;
+    private double storedTokens;
+    /**
+     * 下一个令牌可用的时间，之前的请求预约令牌后向后推移
+     */
+    private long nextFreeNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this.capacity = capacity;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.storedTokens = capacity;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个令牌
+     *
+     * @param maxWaitNanos 没有令牌时最多等待的时间
+     * @return 需要等待的时间（纳秒），0表示立即获得；等待时间超过上限时返回-1，不消耗令牌
+     */
+    public synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        refill(now);
+        long waitNanos = nextFreeNanos - now;
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        if (storedTokens >= 1) {
+            storedTokens -= 1;
+        } else {
+            nextFreeNanos += (long) ((1 - storedTokens) * intervalNanos);
+            storedTokens = 0;
+        }
+        return waitNanos;
+    }
+
+    /**
+     * 立即获取一个令牌，只有已经积累了完整的令牌时成功，不预约未来的令牌
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        refill(now);
+        //之前的请求预约了还没有生成的令牌
+        if (nextFreeNanos > now || storedTokens < 1) {
+            return false;
+        }
+        storedTokens -= 1;
+        return true;
+    }
+
+    /**
+     * 按经过的时间补充令牌
+     */
+    private void refill(long now) {
+        if (now > nextFreeNanos) {
+            storedTokens = Math.min(capacity, storedTokens + (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+--令牌桶key limit:seckill:{voucherId}，hash结构保存 tokens（剩余令牌）和 ts（上次更新时间，毫秒）
+local key = KEYS[1]
+--每秒生成的令牌数
+local rate = tonumber(ARGV[1])
+--令牌桶容量
+local capacity = tonumber(ARGV[2])
+
+--使用Redis服务器时间，避免各节点时钟不一致
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('hmget', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if (tokens == nil or ts == nil) then
+    tokens = capacity
+    ts = now
+end
+--按时间补充令牌
+if (now > ts) then
+    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+    ts = now
+end
+
+local allowed = 0
+if (tokens >= 1) then
+    tokens = tokens - 1
+    allowed = 1
+end
+redis.call('hset', key, 'tokens', tostring(tokens), 'ts', tostring(ts))
+--令牌桶填满所需时间后过期
+redis.call('pexpire', key, math.ceil(capacity * 1000 / rate) + 1000)
+return allowed
@@ -9,13 +9,36 @@ local orderId =ARGV[3]
 local stockKey = 'seckill:stock:' .. voucherId
 --订单key
 local orderKey = 'seckill:order:' .. voucherId
+--秒杀时间窗口key，值为 开始时间:结束时间（秒）
+local windowKey = 'seckill:window:' .. voucherId
 
+--判断秒杀时间窗口（使用Redis服务器时间）
+redis.replicate_commands()
+local window = redis.call('get', windowKey)
+if (window) then
+    local now = tonumber(redis.call('time')[1])
+    local beginTime, endTime = string.match(window, '(%d+):(%d+)')
+    if (now < tonumber(beginTime)) then
+        return 4
+    end
+    if (now >= tonumber(endTime)) then
+        return 5
+    end
+elseif (redis.call('exists', stockKey) == 1) then
+    --已写入库存但还没有时间窗口（新增秒杀券的事务尚未提交），按尚未开始处理
+    return 4
+end
+--库存还没有写入Redis（尚未预热或数据丢失），不能按库存不足处理，由调用方预热后重试
+local stock = tonumber(redis.call('get', stockKey))
+if (stock == nil) then
+    return 6
+end
 --判断库存
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+if (stock <= 0) then
     return 1
 end
---判断是否二次下单
-if (redis.call('sismember', orderKey, userId)) then
+--判断是否二次下单（sismember返回0或1，在Lua中0也是真值，需要比较）
+if (redis.call('sismember', orderKey, userId) == 1) then
     return 2
 end
 
@@ -0,0 +1,49 @@
+--分片库存key seckill:stock:{voucherId:shard}
+local stockKey = KEYS[1]
+--分片下单用户key seckill:order:{voucherId:shard}，与库存key在同一个slot
+local orderKey = KEYS[2]
+--分片秒杀时间窗口key seckill:window:{voucherId:shard}，值为 开始时间:结束时间（秒）
+local windowKey = KEYS[3]
+--分片订单消息队列 stream.orders:{voucherId:shard}，与库存key在同一个slot
+local streamKey = KEYS[4]
+--用户Id
+local userId = ARGV[1]
+--优惠券Id
+local voucherId = ARGV[2]
+--订单Id
+local orderId = ARGV[3]
+
+--判断秒杀时间窗口（使用Redis服务器时间）
+redis.replicate_commands()
+local window = redis.call('get', windowKey)
+if (window) then
+    local now = tonumber(redis.call('time')[1])
+    local beginTime, endTime = string.match(window, '(%d+):(%d+)')
+    if (now < tonumber(beginTime)) then
+        return 4
+    end
+    if (now >= tonumber(endTime)) then
+        return 5
+    end
+elseif (redis.call('exists', stockKey) == 1) then
+    --已写入库存但还没有时间窗口（新增秒杀券的事务尚未提交），按尚未开始处理
+    return 4
+end
+--判断是否二次下单（一人一单只记录在用户所属的分片）
+if (redis.call('sismember', orderKey, userId) == 1) then
+    return 2
+end
+--本分片有库存，扣减库存、记录下单用户，并将订单写入本分片的消息队列
+local stock = tonumber(redis.call('get', stockKey))
+--库存还没有写入Redis（尚未预热或数据丢失），不能按库存不足处理，由调用方预热后重试
+if (stock == nil) then
+    return 6
+end
+if (stock > 0) then
+    redis.call('incrby', stockKey, -1)
+    redis.call('sadd', orderKey, userId)
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+    return 0
+end
+--本分片库存不足，不记录用户，由调用方从其他分片转移库存后重试
+return 3
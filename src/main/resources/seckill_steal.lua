@@ -0,0 +1,10 @@
+--其他分片的库存key seckill:stock:{voucherId:shard}
+local stockKey = KEYS[1]
+
+--有库存则扣减1（转移到用户所属的分片），返回1；没有库存返回0
+local stock = tonumber(redis.call('get', stockKey))
+if (stock ~= nil and stock > 0) then
+    redis.call('incrby', stockKey, -1)
+    return 1
+end
+return 0
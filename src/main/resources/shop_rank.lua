@@ -0,0 +1,11 @@
+--店铺id
+local shopId = ARGV[1]
+
+--KEYS为同一店铺类型的各排序key（shop:rank:{typeId}:排序），ARGV[i+1]为店铺在第i个排序中的分数
+--只更新已经存在的排序，不存在的排序在下次查询时从数据库完整重建，避免只包含部分店铺
+for i, key in ipairs(KEYS) do
+    if (redis.call('exists', key) == 1) then
+        redis.call('zadd', key, ARGV[i + 1], shopId)
+    end
+end
+return 0
@@ -0,0 +1,13 @@
+--workerId租约key id:worker:{workerId}
+local key = KEYS[1]
+--当前节点标识
+local owner = ARGV[1]
+--租约时长（秒）
+local ttl = ARGV[2]
+
+--租约仍属于当前节点时续期
+if (redis.call('get', key) == owner) then
+    redis.call('expire', key, ttl)
+    return 1
+end
+return 0
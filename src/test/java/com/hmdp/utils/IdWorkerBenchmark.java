@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局id生成方式的吞吐量对比：SnowflakeIdWorker（不访问Redis）、RedisIdWorker 每个id执行一次INCR的方式（redis）
+ * 与当前默认的号段方式（segment），分别在 1、8、64 个线程下运行
+ * redis和segment方式需要本地Redis，连接参数通过系统属性 redis.host、redis.port、redis.password 指定，默认与 application.yaml 相同
+ * 运行：在IDE中执行 main 方法，或 mvn test-compile 后以 test classpath 运行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdWorkerBenchmark {
+
+    private static final int[] THREADS = {1, 8, 64};
+
+    private LettuceConnectionFactory connectionFactory;
+    private SnowflakeIdWorker snowflakeIdWorker;
+    private RedisIdWorker redisIdWorker;
+    private RedisIdWorker segmentIdWorker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+        configuration.setPassword(RedisPassword.of(System.getProperty("redis.password", "123456")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        //手动指定workerId，不租用
+        snowflakeIdWorker = new SnowflakeIdWorker();
+        ReflectUtil.setFieldValue(snowflakeIdWorker, "mode", "snowflake");
+        ReflectUtil.setFieldValue(snowflakeIdWorker, "configuredWorkerId", 1L);
+        snowflakeIdWorker.init();
+
+        redisIdWorker = new RedisIdWorker();
+        redisIdWorker.stringRedisTemplate = stringRedisTemplate;
+        redisIdWorker.snowflakeIdWorker = snowflakeIdWorker;
+        ReflectUtil.setFieldValue(redisIdWorker, "mode", "redis");
+
+        segmentIdWorker = new RedisIdWorker();
+        segmentIdWorker.stringRedisTemplate = stringRedisTemplate;
+        segmentIdWorker.snowflakeIdWorker = snowflakeIdWorker;
+        ReflectUtil.setFieldValue(segmentIdWorker, "mode", "segment");
+        ReflectUtil.setFieldValue(segmentIdWorker, "segmentStep", 1000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redisIdWorker.shutdown();
+        segmentIdWorker.shutdown();
+        snowflakeIdWorker.shutdown();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflakeIdWorker.nextId();
+    }
+
+    @Benchmark
+    public long redis() {
+        return redisIdWorker.nextId("benchmark");
+    }
+
+    @Benchmark
+    public long segment() {
+        return segmentIdWorker.nextId("benchmark");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            new Runner(new OptionsBuilder()
+                    .include(IdWorkerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * RedisIdWorker 号段方式：80%时预取下一段，用完后切换到预取的号段，预取失败时同步申请
+ */
+class RedisIdWorkerTest {
+
+    private static final String KEY_PREFIX = "order:";
+    private static final long STEP = 10L;
+    private static final long COUNT_MASK = (1L << RedisIdWorker.COUNT_BITS) - 1;
+
+    private RedisIdWorker idWorker;
+    private ValueOperations<String, String> ops;
+    /**
+     * 模拟Redis中的计数器
+     */
+    private final AtomicLong counter = new AtomicLong();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ops = mock(ValueOperations.class);
+        when(ops.increment(anyString(), anyLong())).thenAnswer(invocation -> counter.addAndGet(invocation.getArgument(1)));
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(ops);
+
+        idWorker = new RedisIdWorker();
+        idWorker.stringRedisTemplate = stringRedisTemplate;
+        ReflectUtil.setFieldValue(idWorker, "mode", "segment");
+        ReflectUtil.setFieldValue(idWorker, "segmentStep", STEP);
+    }
+
+    @AfterEach
+    void tearDown() {
+        idWorker.shutdown();
+    }
+
+    @Test
+    void prefetchesAtEightyPercentAndSwitchesToPrefetchedSegment() throws Exception {
+        //第一段为 [1, 11)，分配到9时预取下一段
+        for (int i = 1; i <= 8; i++) {
+            assertEquals(i, count(idWorker.nextId(KEY_PREFIX)));
+        }
+        verify(ops, times(1)).increment(anyString(), eq(STEP));
+        assertEquals(9, count(idWorker.nextId(KEY_PREFIX)));
+        awaitPrefetch();
+        verify(ops, times(2)).increment(anyString(), eq(STEP));
+
+        //第一段用完后切换到预取的号段，不再同步申请
+        assertEquals(10, count(idWorker.nextId(KEY_PREFIX)));
+        assertEquals(11, count(idWorker.nextId(KEY_PREFIX)));
+        assertEquals(12, count(idWorker.nextId(KEY_PREFIX)));
+        verify(ops, times(2)).increment(anyString(), eq(STEP));
+    }
+
+    @Test
+    void allocatesSynchronouslyWhenPrefetchFails() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("redis unavailable");
+            }
+            return counter.addAndGet(invocation.getArgument(1));
+        }).when(ops).increment(anyString(), anyLong());
+        for (int i = 1; i <= 9; i++) {
+            idWorker.nextId(KEY_PREFIX);
+        }
+        awaitPrefetch();
+        verify(ops, times(2)).increment(anyString(), eq(STEP));
+
+        assertEquals(10, count(idWorker.nextId(KEY_PREFIX)));
+        //预取失败，号段用完后同步申请下一段
+        assertEquals(11, count(idWorker.nextId(KEY_PREFIX)));
+        verify(ops, times(3)).increment(anyString(), eq(STEP));
+    }
+
+    @Test
+    void concurrentIdsAreUniqueAcrossSegments() throws Exception {
+        int threads = 8;
+        int perThread = 500;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(idWorker.nextId(KEY_PREFIX));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * perThread, ids.size());
+        //每段只分配一次，最多多申请一个预取的号段
+        assertTrue(counter.get() <= threads * perThread + 2 * STEP);
+    }
+
+    /**
+     * 预取线程是单线程，排在预取任务之后的空任务执行完时预取已经结束
+     */
+    private void awaitPrefetch() throws Exception {
+        ExecutorService prefetchExecutor = (ExecutorService) ReflectUtil.getFieldValue(idWorker, "prefetchExecutor");
+        prefetchExecutor.submit(() -> { }).get(1, TimeUnit.SECONDS);
+    }
+
+    private static long count(long id) {
+        return id & COUNT_MASK;
+    }
+}
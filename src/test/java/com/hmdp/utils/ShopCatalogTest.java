@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ShopCatalog：按条件筛选、排序、分页，营业时间解析
+ */
+class ShopCatalogTest {
+
+    private static final String ALL_DAY = "00:00-24:00";
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    private ShopCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new ShopCatalog(null, true);
+        List<Shop> shops = new ArrayList<>();
+        shops.add(shop(1L, 1L, "A", 50L, 45, 100, ALL_DAY, X, Y));
+        shops.add(shop(2L, 1L, "A", 80L, 48, 50, null, X + 0.01, Y));
+        shops.add(shop(3L, 1L, "B", 30L, 40, 300, ALL_DAY, null, null));
+        shops.add(shop(4L, 2L, "A", 60L, 49, 10, ALL_DAY, X, Y + 0.01));
+        shops.add(shop(5L, 1L, "B", 120L, 45, 200, ALL_DAY, X + 0.15, Y));
+        catalog.putAll(shops);
+        catalog.markReady();
+    }
+
+    @Test
+    void defaultSortIsScoreThenId() {
+        ShopCatalog.Page page = catalog.query(filter(1L), 0, 10);
+        assertEquals(Arrays.asList(2L, 1L, 5L, 3L), page.getIds());
+        assertEquals(4, page.getTotal());
+        page.getDistances().forEach(distance -> assertNull(distance));
+    }
+
+    @Test
+    void sortBySoldAndPrice() {
+        ShopFilter filter = filter(1L);
+        filter.setSortBy(ShopCatalog.SORT_SOLD);
+        assertEquals(Arrays.asList(3L, 5L, 1L, 2L), catalog.query(filter, 0, 10).getIds());
+        filter.setSortBy(ShopCatalog.SORT_AVG_PRICE);
+        assertEquals(Arrays.asList(3L, 1L, 2L, 5L), catalog.query(filter, 0, 10).getIds());
+        //没有坐标时不能按距离排序，按评分
+        filter.setSortBy(ShopCatalog.SORT_DISTANCE);
+        assertEquals(Arrays.asList(2L, 1L, 5L, 3L), catalog.query(filter, 0, 10).getIds());
+    }
+
+    @Test
+    void filtersByAreaPriceAndScore() {
+        ShopFilter filter = filter(1L);
+        filter.setArea("A");
+        assertEquals(Arrays.asList(2L, 1L), catalog.query(filter, 0, 10).getIds());
+
+        filter = filter(1L);
+        filter.setMinPrice(40L);
+        filter.setMaxPrice(100L);
+        assertEquals(Arrays.asList(2L, 1L), catalog.query(filter, 0, 10).getIds());
+
+        filter = filter(1L);
+        filter.setMinScore(45);
+        assertEquals(Arrays.asList(2L, 1L, 5L), catalog.query(filter, 0, 10).getIds());
+
+        //不限类型
+        filter = new ShopFilter();
+        filter.setArea("A");
+        assertEquals(Arrays.asList(4L, 2L, 1L), catalog.query(filter, 0, 10).getIds());
+    }
+
+    @Test
+    void filtersOpenNow() {
+        ShopFilter filter = filter(1L);
+        filter.setOpenNow(true);
+        //没有营业时间的店铺按不营业处理
+        assertEquals(Arrays.asList(1L, 5L, 3L), catalog.query(filter, 0, 10).getIds());
+    }
+
+    @Test
+    void sortsByDistanceWithinMaxDistance() {
+        ShopFilter filter = filter(1L);
+        filter.setX(X);
+        filter.setY(Y);
+        ShopCatalog.Page page = catalog.query(filter, 0, 10);
+        //没有坐标的店铺不参与距离筛选
+        assertEquals(Arrays.asList(1L, 2L, 5L), page.getIds());
+        assertEquals(0.0, page.getDistances().get(0), 1e-6);
+        assertTrue(page.getDistances().get(1) < page.getDistances().get(2));
+
+        filter.setMaxDistance(2000.0);
+        page = catalog.query(filter, 0, 10);
+        assertEquals(Arrays.asList(1L, 2L), page.getIds());
+        assertEquals(2, page.getTotal());
+    }
+
+    @Test
+    void pagesWithTotal() {
+        ShopCatalog.Page page = catalog.query(filter(1L), 1, 2);
+        assertEquals(Arrays.asList(1L, 5L), page.getIds());
+        assertEquals(4, page.getTotal());
+        assertEquals(Collections.emptyList(), catalog.query(filter(1L), 4, 2).getIds());
+    }
+
+    @Test
+    void updateMovesShopBetweenTypes() {
+        catalog.putAll(Collections.singletonList(shop(2L, 2L, "B", 80L, 48, 50, null, X + 0.01, Y)));
+        assertEquals(Arrays.asList(1L, 5L, 3L), catalog.query(filter(1L), 0, 10).getIds());
+        assertEquals(Arrays.asList(4L, 2L), catalog.query(filter(2L), 0, 10).getIds());
+        ShopFilter filter = filter(1L);
+        filter.setArea("A");
+        assertEquals(Collections.singletonList(1L), catalog.query(filter, 0, 10).getIds());
+    }
+
+    @Test
+    void parseOpenHours() {
+        assertArrayEquals(new int[]{600, 1320}, ShopCatalog.parseOpenHours("10:00-22:00"));
+        assertArrayEquals(new int[]{690, 180}, ShopCatalog.parseOpenHours("11:30-03:00"));
+        assertArrayEquals(new int[]{540, 1290}, ShopCatalog.parseOpenHours(" 09:00 - 21:30 "));
+        assertArrayEquals(new int[]{0, 1440}, ShopCatalog.parseOpenHours(ALL_DAY));
+        int[] unknown = {-1, -1};
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours(null));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours(""));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours("10:00"));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours("10:00-22:00-23:00"));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours("10:60-22:00"));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours("25:00-26:00"));
+        assertArrayEquals(unknown, ShopCatalog.parseOpenHours("ten-22:00"));
+    }
+
+    @Test
+    void isOpen() {
+        int[] day = ShopCatalog.parseOpenHours("10:00-22:00");
+        assertTrue(ShopCatalog.isOpen(day, 600));
+        assertFalse(ShopCatalog.isOpen(day, 1320));
+        assertFalse(ShopCatalog.isOpen(day, 30));
+        //跨天营业
+        int[] night = ShopCatalog.parseOpenHours("22:00-02:00");
+        assertTrue(ShopCatalog.isOpen(night, 1380));
+        assertTrue(ShopCatalog.isOpen(night, 60));
+        assertFalse(ShopCatalog.isOpen(night, 600));
+        assertFalse(ShopCatalog.isOpen(new int[]{-1, -1}, 600));
+    }
+
+    private static ShopFilter filter(Long typeId) {
+        ShopFilter filter = new ShopFilter();
+        filter.setTypeId(typeId);
+        return filter;
+    }
+
+    private static Shop shop(long id, long typeId, String area, Long avgPrice, int score, int sold,
+                             String openHours, Double x, Double y) {
+        return new Shop().setId(id).setTypeId(typeId).setArea(area).setAvgPrice(avgPrice).setScore(score)
+                .setSold(sold).setOpenHours(openHours).setX(x).setY(y);
+    }
+}
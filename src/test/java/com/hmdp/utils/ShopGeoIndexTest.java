@@ -0,0 +1,161 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ShopGeoIndex.nearby：与逐个计算距离的结果一致，逐圈扩展和游标翻页能够结束
+ */
+class ShopGeoIndexTest {
+
+    private static final long TYPE_ID = 1L;
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    private ShopGeoIndex index;
+    private List<Shop> shops;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopGeoIndex(null, true, 0.01);
+        shops = new ArrayList<>();
+        Random random = new Random(42);
+        for (long id = 1; id <= 500; id++) {
+            //中心点周围约±0.2度
+            shops.add(shop(id, TYPE_ID, X + (random.nextDouble() - 0.5) * 0.4, Y + (random.nextDouble() - 0.5) * 0.4));
+        }
+        //其他类型的店铺不参与查询
+        shops.add(shop(1001L, 2L, X, Y));
+        index.putAll(shops);
+        index.markReady();
+    }
+
+    @Test
+    void nearbyMatchesBruteForce() {
+        double radius = 5000;
+        List<Long> expected = bruteForce(radius).stream().limit(20).map(ShopGeoIndex.Neighbor::getId)
+                .collect(Collectors.toList());
+        List<Long> actual = index.nearby(TYPE_ID, X, Y, radius, null, null, 20).stream()
+                .map(ShopGeoIndex.Neighbor::getId).collect(Collectors.toList());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void cursorPagesThroughAllShopsInRadius() {
+        double radius = 8000;
+        List<Long> expected = bruteForce(radius).stream().map(ShopGeoIndex.Neighbor::getId)
+                .collect(Collectors.toList());
+        List<Long> paged = new ArrayList<>();
+        Double lastDistance = null;
+        Long lastId = null;
+        for (int page = 0; page <= expected.size(); page++) {
+            List<ShopGeoIndex.Neighbor> neighbors = index.nearby(TYPE_ID, X, Y, radius, lastDistance, lastId, 7);
+            if (neighbors.isEmpty()) {
+                break;
+            }
+            neighbors.forEach(neighbor -> paged.add(neighbor.getId()));
+            ShopGeoIndex.Neighbor last = neighbors.get(neighbors.size() - 1);
+            lastDistance = last.getDistance();
+            lastId = last.getId();
+        }
+        assertEquals(expected, paged);
+        assertEquals(paged.size(), new HashSet<>(paged).size());
+    }
+
+    @Test
+    void cursorBreaksTiesById() {
+        ShopGeoIndex sameSpot = new ShopGeoIndex(null, true, 0.01);
+        List<Shop> tied = new ArrayList<>();
+        for (long id = 10; id > 0; id--) {
+            tied.add(shop(id, TYPE_ID, X + 0.001, Y));
+        }
+        sameSpot.putAll(tied);
+        List<ShopGeoIndex.Neighbor> first = sameSpot.nearby(TYPE_ID, X, Y, 1000, null, null, 4);
+        assertEquals(4L, first.get(3).getId());
+        List<ShopGeoIndex.Neighbor> second = sameSpot.nearby(TYPE_ID, X, Y, 1000,
+                first.get(3).getDistance(), first.get(3).getId(), 4);
+        assertEquals(5L, second.get(0).getId());
+        assertEquals(8L, second.get(3).getId());
+    }
+
+    @Test
+    void ringExpansionStopsAtRadius() {
+        ShopGeoIndex sparse = new ShopGeoIndex(null, true, 0.001);
+        //唯一的店铺在地球另一侧，查询半径很小时不能扫描到最大圈
+        List<Shop> far = new ArrayList<>();
+        far.add(shop(1L, TYPE_ID, -60.0, -30.0));
+        sparse.putAll(far);
+        List<ShopGeoIndex.Neighbor> neighbors = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                () -> sparse.nearby(TYPE_ID, X, Y, 200, null, null, 10));
+        assertTrue(neighbors.isEmpty());
+    }
+
+    @Test
+    void ringExpansionStopsWhenLimitIsReached() {
+        ShopGeoIndex fine = new ShopGeoIndex(null, true, 0.0001);
+        List<Shop> near = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            near.add(shop(id, TYPE_ID, X + id * 0.00001, Y));
+        }
+        near.add(shop(6L, TYPE_ID, -60.0, -30.0));
+        fine.putAll(near);
+        //半径覆盖整个地球，找到足够数量后即停止，不扫描到最远的店铺所在的圈
+        List<ShopGeoIndex.Neighbor> neighbors = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                () -> fine.nearby(TYPE_ID, X, Y, 2.0e7, null, null, 3));
+        assertEquals(3, neighbors.size());
+        assertEquals(1L, neighbors.get(0).getId());
+    }
+
+    @Test
+    void updatedShopMovesToNewCell() {
+        Set<Long> before = ids(index.nearby(TYPE_ID, X, Y, 100000, null, null, 1000));
+        assertTrue(before.contains(1L));
+        index.putAll(singleton(shop(1L, TYPE_ID, X + 10, Y)));
+        Set<Long> after = ids(index.nearby(TYPE_ID, X, Y, 100000, null, null, 1000));
+        assertFalse(after.contains(1L));
+        assertEquals(before.size() - 1, after.size());
+    }
+
+    private List<ShopGeoIndex.Neighbor> bruteForce(double radius) {
+        List<ShopGeoIndex.Neighbor> neighbors = new ArrayList<>();
+        for (Shop shop : shops) {
+            if (shop.getTypeId() != TYPE_ID) {
+                continue;
+            }
+            double distance = ShopGeoIndex.distance(X, Y, shop.getX(), shop.getY());
+            if (distance <= radius) {
+                neighbors.add(new ShopGeoIndex.Neighbor(shop.getId(), distance));
+            }
+        }
+        neighbors.sort(ShopGeoIndex.ORDER);
+        return neighbors;
+    }
+
+    private static Set<Long> ids(List<ShopGeoIndex.Neighbor> neighbors) {
+        return neighbors.stream().map(ShopGeoIndex.Neighbor::getId).collect(Collectors.toSet());
+    }
+
+    private static List<Shop> singleton(Shop shop) {
+        List<Shop> list = new ArrayList<>();
+        list.add(shop);
+        return list;
+    }
+
+    private static Shop shop(long id, long typeId, double x, double y) {
+        return new Shop().setId(id).setTypeId(typeId).setX(x).setY(y);
+    }
+}
@@ -0,0 +1,100 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ShopNameIndex：关键字查询的匹配、排序和分页，前缀联想
+ */
+class ShopNameIndexTest {
+
+    private ShopNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopNameIndex(null, true, 1000);
+        List<Shop> shops = new ArrayList<>();
+        shops.add(shop(1L, "海底捞火锅", 45, 100));
+        shops.add(shop(2L, "火锅", 40, 50));
+        shops.add(shop(3L, "老码头火锅", 48, 300));
+        shops.add(shop(4L, "火锅先生", 42, 80));
+        shops.add(shop(5L, "火锅先生", 42, 90));
+        shops.add(shop(6L, "锅火烧烤", 49, 500));
+        shops.add(shop(7L, "Star Coffee", 47, 200));
+        index.putAll(shops);
+        index.markReady();
+    }
+
+    @Test
+    void searchOrdersByMatchLevelThenScoreAndSold() {
+        //完全相同 > 前缀（同评分按销量） > 包含（按评分）；“锅火”不包含关键字
+        assertEquals(Arrays.asList(2L, 5L, 4L, 3L, 1L), index.search("火锅", 0, 10));
+    }
+
+    @Test
+    void searchRequiresContiguousMatch() {
+        assertEquals(Arrays.asList(5L, 4L), index.search("火锅先", 0, 10));
+        //“火锅”和“锅火”两个两字组合都出现，但名称不包含“火锅火”
+        index.putAll(Collections.singletonList(shop(8L, "火锅锅火", 40, 10)));
+        assertEquals(Collections.emptyList(), index.search("火锅火", 0, 10));
+        assertEquals(Collections.emptyList(), index.search("锅烧", 0, 10));
+    }
+
+    @Test
+    void searchNormalizesCaseAndSymbols() {
+        assertEquals(Collections.singletonList(7L), index.search("star-coffee", 0, 10));
+        assertEquals(Collections.singletonList(7L), index.search(" STAR ", 0, 10));
+        assertEquals(Collections.emptyList(), index.search("  ", 0, 10));
+    }
+
+    @Test
+    void searchPages() {
+        assertEquals(Arrays.asList(2L, 5L), index.search("火锅", 0, 2));
+        assertEquals(Arrays.asList(4L, 3L), index.search("火锅", 2, 2));
+        assertEquals(Collections.singletonList(1L), index.search("火锅", 4, 2));
+        assertEquals(Collections.emptyList(), index.search("火锅", 6, 2));
+    }
+
+    @Test
+    void searchSingleCharacter() {
+        assertEquals(Collections.singletonList(6L), index.search("烤", 0, 10));
+        //前缀匹配在前，包含的按评分、销量排序
+        assertEquals(Arrays.asList(6L, 3L, 1L, 5L, 4L, 2L), index.search("锅", 0, 10));
+    }
+
+    @Test
+    void updateReplacesOldName() {
+        index.putAll(Collections.singletonList(shop(2L, "烧烤", 40, 50)));
+        assertEquals(Arrays.asList(5L, 4L, 3L, 1L), index.search("火锅", 0, 10));
+        assertTrue(index.search("烧烤", 0, 10).contains(2L));
+    }
+
+    @Test
+    void suggestPrefersPrefixMatches() {
+        Map<Long, String> suggestions = index.suggest("火锅", 10);
+        //前缀匹配在前，不足时用包含关键字的店铺补充
+        assertEquals(Arrays.asList(2L, 5L, 4L, 3L, 1L), new ArrayList<>(suggestions.keySet()));
+        assertEquals("火锅先生", suggestions.get(5L));
+    }
+
+    @Test
+    void suggestRespectsLimit() {
+        assertEquals(Arrays.asList(2L, 5L), new ArrayList<>(index.suggest("火锅", 2).keySet()));
+        assertTrue(index.suggest("火锅", 0).isEmpty());
+        assertTrue(index.suggest("", 5).isEmpty());
+    }
+
+    private static Shop shop(long id, String name, int score, int sold) {
+        return new Shop().setId(id).setName(name).setScore(score).setSold(sold);
+    }
+}
@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisIdWorker.BEGIN_TIMESTAMP;
+import static com.hmdp.utils.RedisIdWorker.COUNT_BITS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SnowflakeIdWorker.nextId：id结构、时钟回拨、序列号用完、并发唯一（手动指定workerId，不访问Redis）
+ */
+class SnowflakeIdWorkerTest {
+
+    private static final long WORKER_ID = 5L;
+    private static final int SEQUENCE_BITS = 22;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private SnowflakeIdWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        worker = newWorker(WORKER_ID);
+        worker.init();
+    }
+
+    @Test
+    void idContainsTimestampWorkerAndSequence() {
+        long before = nowSecond();
+        long id = worker.nextId();
+        long second = id >>> COUNT_BITS;
+        assertTrue(second >= before && second <= nowSecond());
+        assertEquals(WORKER_ID, (id >>> SEQUENCE_BITS) & 1023);
+        long next = worker.nextId();
+        assertTrue(next > id);
+    }
+
+    @Test
+    void clockRollbackKeepsLastTimestamp() {
+        //上一次使用的时间戳比当前时钟晚10秒，相当于时钟回拨
+        long future = nowSecond() + 10;
+        state().set(future << SEQUENCE_BITS | 7);
+        long id = worker.nextId();
+        assertEquals(future, id >>> COUNT_BITS);
+        assertEquals(8, id & SEQUENCE_MASK);
+        assertEquals(1, worker.getClockBackwardCount());
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextSecond() {
+        long future = nowSecond() + 10;
+        state().set(future << SEQUENCE_BITS | SEQUENCE_MASK);
+        long id = worker.nextId();
+        assertEquals(future + 1, id >>> COUNT_BITS);
+        assertEquals(0, id & SEQUENCE_MASK);
+        assertEquals(WORKER_ID, (id >>> SEQUENCE_BITS) & 1023);
+    }
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasingPerThread() throws Exception {
+        int threads = 8;
+        int perThread = 20000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long last = 0;
+                    boolean increasing = true;
+                    for (int i = 0; i < perThread; i++) {
+                        long id = worker.nextId();
+                        increasing &= id > last;
+                        last = id;
+                        ids.add(id);
+                    }
+                    return increasing;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    void reservedWorkerIdIsRejected() {
+        assertThrows(IllegalStateException.class, () -> newWorker(0L).init());
+        assertThrows(IllegalStateException.class, () -> newWorker(1024L).init());
+    }
+
+    @Test
+    void uninitializedWorkerRefusesIds() {
+        assertThrows(IllegalStateException.class, () -> new SnowflakeIdWorker().nextId());
+    }
+
+    private static SnowflakeIdWorker newWorker(long workerId) {
+        SnowflakeIdWorker worker = new SnowflakeIdWorker();
+        ReflectUtil.setFieldValue(worker, "mode", "snowflake");
+        ReflectUtil.setFieldValue(worker, "configuredWorkerId", workerId);
+        return worker;
+    }
+
+    private AtomicLong state() {
+        return (AtomicLong) ReflectUtil.getFieldValue(worker, "state");
+    }
+
+    private static long nowSecond() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+    }
+}
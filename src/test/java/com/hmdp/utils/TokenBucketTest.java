@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TokenBucket：积累的令牌、预约和等待上限
+ */
+class TokenBucketTest {
+
+    @Test
+    void tryAcquireAdmitsOnlyStoredTokens() {
+        //每秒1个，测试期间不会生成新的完整令牌
+        TokenBucket bucket = new TokenBucket(1, 3);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void tryAcquireDoesNotBorrowAfterReservation() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertTrue(bucket.tryAcquire());
+        //预约下一个令牌，之后在令牌生成前都不能立即获取
+        assertTrue(bucket.reserve(TimeUnit.SECONDS.toNanos(2)) >= 0);
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void reserveRejectsWhenWaitExceedsLimit() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.reserve(0));
+        //没有令牌时预约下一个，需要等待约1秒
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(TimeUnit.MILLISECONDS.toNanos(100)));
+        long wait = bucket.reserve(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(500) && wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void tokensRefillOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(20);
+        assertTrue(bucket.tryAcquire());
+    }
+}